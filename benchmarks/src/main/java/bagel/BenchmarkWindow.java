@@ -0,0 +1,76 @@
+package bagel;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens a headless window for benchmarks that need a graphics context, and gives them access to its render queue.
+ *
+ * JMH runs a benchmark's setup, iterations and teardown on the same worker thread, which becomes the window's main
+ * thread; nothing here is safe to call from any other thread.
+ */
+public class BenchmarkWindow {
+    private static AbstractGame game = null;
+
+    /**
+     * Seal the class.
+     */
+    private BenchmarkWindow() {}
+
+    /**
+     * Open the window, if it isn't already open.
+     */
+    public static void open() {
+        if (game == null) {
+            Window.setHeadless(true);
+            game = new AbstractGame(1920, 1080, "Benchmark") {
+                @Override
+                protected void update(Input input) {}
+            };
+        }
+    }
+
+    /**
+     * Throw away everything drawn since the last call, so that the queue doesn't grow across invocations.
+     */
+    public static void discardFrame() {
+        Window.get().getRenderQueue().clear();
+    }
+
+    /**
+     * Returns the number of jobs drawn since the last {@link #discardFrame()}.
+     */
+    public static int queuedJobs() {
+        return Window.get().getRenderQueue().size();
+    }
+
+    /**
+     * Close the window and release everything it was holding.
+     */
+    public static void close() {
+        if (game != null) {
+            Window.close();
+            game.run();
+            game = null;
+        }
+    }
+
+    /**
+     * Write a PNG of the given size to a temporary file, filled with a pattern so it isn't trivially compressible, and
+     * return its path.
+     */
+    public static String writeImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                image.setRGB(x, y, 0xff000000 | (x * 7 & 0xff) << 16 | (y * 13 & 0xff) << 8 | ((x ^ y) & 0xff));
+            }
+        }
+        File file = File.createTempFile("bagel-bench", ".png");
+        file.deleteOnExit();
+        ImageIO.write(image, "png", file);
+        return file.getPath().replace("\\", "/");
+    }
+}
@@ -0,0 +1,108 @@
+package bagel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of submitting one sprite to the render queue, through {@link DrawOptions} directly and through
+ * {@link Image}. Nothing is rendered; the queue is discarded after every batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+    private static final int SPRITES = 1024;
+
+    private Image image;
+    private Texture tex;
+    private RenderQueue queue;
+    private final DrawOptions rotated = new DrawOptions().setRotation(0.5).setScale(2, 2).freeze();
+    private final DrawOptions sectioned = new DrawOptions().setSection(16, 16, 32, 32).freeze();
+    private final DrawOptions everything = new DrawOptions()
+            .setRotation(0.5)
+            .setScale(2, 2)
+            .setBlendColour(1, 0.5, 0.5, 0.75)
+            .setSection(16, 16, 32, 32)
+            .freeze();
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkWindow.open();
+        String file = BenchmarkWindow.writeImage(64, 64);
+        image = new Image(file);
+        tex = TextureManager.getRegion(file).tex;
+        queue = Window.get().getRenderQueue();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkWindow.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPRITES)
+    public int submitDefault() {
+        for (int i = 0; i < SPRITES; ++i) {
+            DrawOptions.DEFAULT.submit(queue, tex, i, i);
+        }
+        return discard();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPRITES)
+    public int submitRotated() {
+        for (int i = 0; i < SPRITES; ++i) {
+            rotated.submit(queue, tex, i, i);
+        }
+        return discard();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPRITES)
+    public int submitSectioned() {
+        for (int i = 0; i < SPRITES; ++i) {
+            sectioned.submit(queue, tex, i, i);
+        }
+        return discard();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPRITES)
+    public int imageDraw() {
+        for (int i = 0; i < SPRITES; ++i) {
+            image.draw(i, i);
+        }
+        return discard();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SPRITES)
+    public int imageDrawWithOptions() {
+        for (int i = 0; i < SPRITES; ++i) {
+            image.draw(i, i, everything);
+        }
+        return discard();
+    }
+
+    private int discard() {
+        int jobs = BenchmarkWindow.queuedJobs();
+        BenchmarkWindow.discardFrame();
+        return jobs;
+    }
+}
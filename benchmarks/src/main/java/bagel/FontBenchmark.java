@@ -0,0 +1,66 @@
+package bagel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measuring and drawing a line of text. Any TrueType font will do; pass a different one with {@code -p font=<path>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FontBenchmark {
+    @Param("/usr/share/fonts/truetype/dejavu/DejaVuSans.ttf")
+    public String font;
+
+    @Param({"12", "80"})
+    public int length;
+
+    private InternalFont internalFont;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        BenchmarkWindow.open();
+        internalFont = TextureManager.getFont(font, 24);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            // Printable characters, with the occasional space and newline
+            builder.append(i % 40 == 39 ? '\n' : i % 6 == 5 ? ' ' : (char) ('a' + i % 26));
+        }
+        text = builder.toString();
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkWindow.close();
+    }
+
+    @Benchmark
+    public double getWidth() {
+        return internalFont.getWidth(text);
+    }
+
+    @Benchmark
+    public int drawString() {
+        internalFont.drawString(text, 100, 100, DrawOptions.DEFAULT);
+        int jobs = BenchmarkWindow.queuedJobs();
+        BenchmarkWindow.discardFrame();
+        return jobs;
+    }
+}
@@ -0,0 +1,158 @@
+package bagel.map;
+
+import bagel.BenchmarkWindow;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Generates TMX and TSX content for the map benchmarks, so that they don't depend on any particular game's assets.
+ *
+ * The tileset is 8x8 tiles of 32x32 pixels. Every other tile has `cost`, `friction` and `solid` properties. Maps have
+ * a fully populated ground layer, a sparse upper layer, and an object group of polylines.
+ */
+class MapFiles {
+    static final int TILE_SIZE = 32;
+    static final int TILES_PER_ROW = 8;
+    private static final int TILE_COUNT = TILES_PER_ROW * TILES_PER_ROW;
+    private static final int FLIPPED_HORIZONTALLY_FLAG = 0x80000000;
+
+    private MapFiles() {}
+
+    // Global ids, so 0 is empty and the tileset starts at 1
+    static int groundGid(int x, int y) {
+        return 1 + (x * 3 + y * 5) % TILE_COUNT;
+    }
+
+    static int upperGid(int x, int y) {
+        return (x + y) % 7 == 0 ? 1 + (x * y) % TILE_COUNT : 0;
+    }
+
+    static String csv(int width, int height) {
+        StringBuilder builder = new StringBuilder();
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                builder.append(groundGid(x, y));
+                if (x + 1 < width || y + 1 < height) {
+                    builder.append(',');
+                }
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The upper layer as base64 of little-endian global ids, compressed with "zlib", "gzip" or "none".
+     */
+    static String base64(int width, int height, String compression) throws IOException {
+        ByteBuffer gids = ByteBuffer.allocate(width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int gid = upperGid(x, y);
+                gids.putInt(gid != 0 && x % 2 == 0 ? gid | FLIPPED_HORIZONTALLY_FLAG : gid);
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        switch (compression) {
+            case "zlib":
+                try (OutputStream os = new DeflaterOutputStream(bytes)) {
+                    os.write(gids.array());
+                }
+                break;
+            case "gzip":
+                try (OutputStream os = new GZIPOutputStream(bytes)) {
+                    os.write(gids.array());
+                }
+                break;
+            default:
+                bytes.write(gids.array());
+                break;
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    static String layer(int id, int width, int height, String encoding, String compression, String data) {
+        String attributes = "encoding=\"" + encoding + "\""
+                + (compression.equals("none") ? "" : " compression=\"" + compression + "\"");
+        return "<layer id=\"" + id + "\" name=\"layer" + id + "\" width=\"" + width + "\" height=\"" + height + "\">\n"
+                + "<data " + attributes + ">\n" + data + "\n</data>\n</layer>\n";
+    }
+
+    static String objectGroup(int id, int objects, int pointsPerLine) {
+        StringBuilder builder = new StringBuilder("<objectgroup id=\"" + id + "\" name=\"paths\">\n");
+        for (int i = 0; i < objects; ++i) {
+            builder.append("<object id=\"").append(i + 1).append("\" x=\"").append(i * 17.5)
+                    .append("\" y=\"").append(i * 9).append("\">\n<polyline points=\"");
+            for (int j = 0; j < pointsPerLine; ++j) {
+                builder.append(j == 0 ? "" : " ").append(j * 32).append(',').append(j % 2 == 0 ? 0 : 16.25);
+            }
+            builder.append("\"/>\n</object>\n");
+        }
+        return builder.append("</objectgroup>\n").toString();
+    }
+
+    /**
+     * Parse a single element, returning its node.
+     */
+    static Node parseElement(String xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setIgnoringElementContentWhitespace(true);
+        return factory.newDocumentBuilder()
+                .parse(new InputSource(new StringReader(xml)))
+                .getDocumentElement();
+    }
+
+    /**
+     * Write a map of the given size in tiles, with its tileset and tileset image, and return the TMX file's path.
+     */
+    static String write(int width, int height) throws IOException {
+        Path dir = Files.createTempDirectory("bagel-bench");
+        dir.toFile().deleteOnExit();
+        String image = BenchmarkWindow.writeImage(TILES_PER_ROW * TILE_SIZE, TILES_PER_ROW * TILE_SIZE);
+        Path imagePath = Path.of(image);
+        Path localImage = Files.move(imagePath, dir.resolve("tiles.png"));
+        localImage.toFile().deleteOnExit();
+
+        StringBuilder tsx = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<tileset name=\"tiles\" tilewidth=\"").append(TILE_SIZE)
+                .append("\" tileheight=\"").append(TILE_SIZE).append("\" tilecount=\"").append(TILE_COUNT)
+                .append("\" columns=\"").append(TILES_PER_ROW).append("\">\n")
+                .append("<image source=\"tiles.png\" width=\"").append(TILES_PER_ROW * TILE_SIZE)
+                .append("\" height=\"").append(TILES_PER_ROW * TILE_SIZE).append("\"/>\n");
+        for (int id = 0; id < TILE_COUNT; id += 2) {
+            tsx.append("<tile id=\"").append(id).append("\">\n<properties>\n")
+                    .append("<property name=\"cost\" type=\"int\" value=\"").append(id * 3).append("\"/>\n")
+                    .append("<property name=\"friction\" type=\"float\" value=\"").append(id / 64.0).append("\"/>\n")
+                    .append("<property name=\"solid\" type=\"bool\" value=\"").append(id % 4 == 0).append("\"/>\n")
+                    .append("</properties>\n</tile>\n");
+        }
+        tsx.append("</tileset>\n");
+        Path tsxPath = Files.writeString(dir.resolve("tiles.tsx"), tsx);
+        tsxPath.toFile().deleteOnExit();
+
+        String tmx = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<map version=\"1.2\" orientation=\"orthogonal\" renderorder=\"right-down\" width=\"" + width
+                + "\" height=\"" + height + "\" tilewidth=\"" + TILE_SIZE + "\" tileheight=\"" + TILE_SIZE + "\">\n"
+                + "<tileset firstgid=\"1\" source=\"tiles.tsx\"/>\n"
+                + layer(1, width, height, "csv", "none", csv(width, height))
+                + layer(2, width, height, "base64", "zlib", base64(width, height, "zlib"))
+                + objectGroup(3, 16, 16)
+                + "</map>\n";
+        Path tmxPath = Files.writeString(dir.resolve("map.tmx"), tmx);
+        tmxPath.toFile().deleteOnExit();
+        return tmxPath.toString().replace("\\", "/");
+    }
+}
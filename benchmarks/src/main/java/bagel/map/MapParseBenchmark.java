@@ -0,0 +1,82 @@
+package bagel.map;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding layer data and object groups from already-parsed XML, the way {@link TiledMap} does when loading. These
+ * don't need a window.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapParseBenchmark {
+    private static final String FILENAME = "benchmark.tmx";
+
+    /** Width and height of the layer, in tiles. */
+    @Param({"64", "256"})
+    public int size;
+
+    @Param({"none", "zlib", "gzip"})
+    public String compression;
+
+    private Node layerNode;
+    private String csv;
+    private String base64;
+    private Node objectGroupNode;
+
+    @Setup
+    public void setUp() throws Exception {
+        layerNode = MapFiles.parseElement(MapFiles.layer(1, size, size, "csv", "none", ""));
+        csv = MapFiles.csv(size, size).trim();
+        base64 = MapFiles.base64(size, size, compression);
+        objectGroupNode = MapFiles.parseElement(MapFiles.objectGroup(1, size / 4, 32));
+    }
+
+    @Benchmark
+    public Layer decodeCsv() {
+        Layer layer = Layer.fromNode(layerNode, FILENAME);
+        layer.loadFromCSV(csv, FILENAME);
+        return layer;
+    }
+
+    @Benchmark
+    public Layer decodeBase64() throws IOException {
+        byte[] decoded = Base64.getDecoder().decode(base64);
+        InputStream is = new ByteArrayInputStream(decoded);
+        if (compression.equals("gzip")) {
+            is = new GZIPInputStream(is);
+        } else if (compression.equals("zlib")) {
+            is = new InflaterInputStream(is);
+        }
+        Layer layer = Layer.fromNode(layerNode, FILENAME);
+        layer.loadFromInputStream(is, FILENAME);
+        return layer;
+    }
+
+    @Benchmark
+    public ObjectGroup parsePolylines() {
+        return ObjectGroup.fromNode(objectGroupNode, FILENAME);
+    }
+}
@@ -0,0 +1,107 @@
+package bagel.map;
+
+import bagel.BenchmarkWindow;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drawing a screenful of a large map, and looking up tile properties, on a map generated by {@link MapFiles}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TiledMapBenchmark {
+    private static final int LOOKUPS = 256;
+
+    /** Width and height of the map, in tiles. */
+    @Param("512")
+    public int size;
+
+    private TiledMap map;
+    // Pixel coordinates to look properties up at, spread over the map
+    private final int[] xs = new int[LOOKUPS];
+    private final int[] ys = new int[LOOKUPS];
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkWindow.open();
+        map = new TiledMap(MapFiles.write(size, size));
+        for (int i = 0; i < LOOKUPS; ++i) {
+            xs[i] = (i * 7919) % map.getWidth();
+            ys[i] = (i * 104729) % map.getHeight();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        BenchmarkWindow.close();
+    }
+
+    /**
+     * A 1920x1080 viewport that doesn't line up with the tile grid, so partial tiles are drawn on every edge.
+     */
+    @Benchmark
+    public int drawViewport() {
+        map.draw(0, 0, 1000.5, 2000.25, 1920, 1080);
+        int jobs = BenchmarkWindow.queuedJobs();
+        BenchmarkWindow.discardFrame();
+        return jobs;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int getPropertyInt() {
+        int total = 0;
+        for (int i = 0; i < LOOKUPS; ++i) {
+            total += map.getPropertyInt(xs[i], ys[i], "cost", -1);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public double getPropertyDouble() {
+        double total = 0;
+        for (int i = 0; i < LOOKUPS; ++i) {
+            total += map.getPropertyDouble(xs[i], ys[i], "friction", 1);
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int getPropertyBoolean() {
+        int total = 0;
+        for (int i = 0; i < LOOKUPS; ++i) {
+            total += map.getPropertyBoolean(xs[i], ys[i], "solid", false) ? 1 : 0;
+        }
+        return total;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOKUPS)
+    public int hasProperty() {
+        int total = 0;
+        for (int i = 0; i < LOOKUPS; ++i) {
+            total += map.hasProperty(xs[i], ys[i], "missing") ? 1 : 0;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,88 @@
+package bagel.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collision checks between one rectangle and many others, as a game would run every frame. About half of the
+ * rectangles and points overlap the target.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RectangleBenchmark {
+    private static final int COUNT = 1024;
+
+    private final Rectangle target = new Rectangle(100, 100, 200, 150);
+    private final Rectangle[] others = new Rectangle[COUNT];
+    private final Point[] points = new Point[COUNT];
+    private final Point[] lastPoints = new Point[COUNT];
+    private final Vector2[] velocities = new Vector2[COUNT];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(20003);
+        for (int i = 0; i < COUNT; ++i) {
+            others[i] = new Rectangle(random.nextDouble() * 400, random.nextDouble() * 300,
+                    random.nextDouble() * 50, random.nextDouble() * 50);
+            points[i] = new Point(random.nextDouble() * 400, random.nextDouble() * 300);
+            velocities[i] = new Vector2(random.nextDouble() * 20 - 10, random.nextDouble() * 20 - 10);
+            lastPoints[i] = new Point(points[i].x - velocities[i].x, points[i].y - velocities[i].y);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int intersectsRectangle() {
+        int hits = 0;
+        for (Rectangle other : others) {
+            hits += target.intersects(other) ? 1 : 0;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int intersectsPoint() {
+        int hits = 0;
+        for (Point point : points) {
+            hits += target.intersects(point) ? 1 : 0;
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int intersectedAtVelocity() {
+        int hits = 0;
+        for (int i = 0; i < COUNT; ++i) {
+            hits += target.intersectedAt(points[i], velocities[i]).ordinal();
+        }
+        return hits;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int intersectedAtLastPoint() {
+        int hits = 0;
+        for (int i = 0; i < COUNT; ++i) {
+            hits += target.intersectedAt(points[i], lastPoints[i]).ordinal();
+        }
+        return hits;
+    }
+}
@@ -16,8 +16,16 @@ import static org.lwjgl.glfw.GLFW.*;
  */
 public abstract class AbstractGame {
     private final Input input;
+    // What the update thread reads in pipelined mode, so it never sees input change halfway through an update
+    private final Input snapshot = new Input();
     private final Window window;
 
+    // Fixed timestep state; a tick length of zero means update once per frame
+    private long tickNanos = 0;
+    private int maxStepsPerFrame = 1;
+    private long accumulatedNanos = 0;
+    private long lastStepTime = 0;
+
     /**
      * Create the game with a default window size (1024x768) and title ("Game").
      */
@@ -137,7 +145,61 @@ public abstract class AbstractGame {
      * Start the game loop.
      */
     public final void run() {
-        window.loop(this::step);
+        run(-1);
+    }
+
+    /**
+     * Run the game loop for the given number of frames, then return with the window still open, so that the frame can
+     * be checked with {@link Window#readPixels()}. Calling this again carries on from where it left off. Mostly useful
+     * in headless mode, for benchmarks and tests; to clean up afterwards, call {@link Window#close()} then
+     * {@link #run()}.
+     *
+     * @see Window#setHeadless(boolean)
+     */
+    public final void runFrames(int frames) {
+        if (frames < 0) {
+            throw new BagelError("Cannot run a negative number of frames");
+        }
+        run(frames);
+    }
+
+    private void run(long frames) {
+        if (Window.isPipelined()) {
+            window.loop(() -> {
+                input.copyChangesTo(snapshot);
+                input.updateState();
+            }, () -> step(snapshot), frames);
+        } else {
+            window.loop(() -> {}, () -> step(input), frames);
+        }
+    }
+
+    /**
+     * Update the state of the game once per frame instead, which is the default.
+     */
+    protected final void disableFixedTimestep() {
+        tickNanos = 0;
+    }
+
+    /**
+     * Run {@link #update(Input)} at a fixed rate, independent of how fast frames are drawn, so the game runs at the
+     * same speed on every screen. Each frame runs however many updates have fallen due, followed by one call to
+     * {@link #render(double)}, which should do all the drawing.
+     *
+     * If the game falls behind, at most maxStepsPerFrame updates run in one frame and the rest of the backlog is
+     * dropped, so the game slows down rather than freezing.
+     *
+     * @param ticksPerSecond   how many updates to run per second of real time
+     * @param maxStepsPerFrame the most updates that can run before a frame is drawn
+     */
+    protected final void enableFixedTimestep(double ticksPerSecond, int maxStepsPerFrame) {
+        if (ticksPerSecond <= 0 || maxStepsPerFrame < 1) {
+            throw new BagelError("Fixed timestep needs a positive tick rate and at least one step per frame");
+        }
+        tickNanos = (long) (1e9 / ticksPerSecond);
+        this.maxStepsPerFrame = maxStepsPerFrame;
+        accumulatedNanos = 0;
+        lastStepTime = 0;
     }
 
     /**
@@ -145,11 +207,48 @@ public abstract class AbstractGame {
      */
     protected abstract void update(Input input);
 
+    /**
+     * Draw the game; called once per frame, after any updates. Does nothing unless overridden.
+     *
+     * With a fixed timestep, alpha is how far between the last update and the next one this frame falls, from 0
+     * (just updated) up to 1, so positions can be interpolated for smooth movement. Otherwise it is always 1.
+     *
+     * @see #enableFixedTimestep(double, int)
+     */
+    protected void render(double alpha) {
+    }
+
     /**
      * Perform a single step of the game loop.
      */
-    private void step() {
-        update(input);
-        input.updateState();
+    private void step(Input input) {
+        if (tickNanos == 0) {
+            update(input);
+            input.updateState();
+            render(1);
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (lastStepTime != 0) {
+            accumulatedNanos += now - lastStepTime;
+        } else {
+            // Always update on the first frame
+            accumulatedNanos = tickNanos;
+        }
+        lastStepTime = now;
+
+        int steps = 0;
+        while (accumulatedNanos >= tickNanos && steps < maxStepsPerFrame) {
+            update(input);
+            input.updateState();
+            accumulatedNanos -= tickNanos;
+            ++steps;
+        }
+        if (accumulatedNanos >= tickNanos) {
+            // Too far behind to catch up; drop the backlog rather than spiralling
+            accumulatedNanos %= tickNanos;
+        }
+        render((double) accumulatedNanos / tickNanos);
     }
 }
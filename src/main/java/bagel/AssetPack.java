@@ -0,0 +1,168 @@
+package bagel;
+
+import org.lwjgl.stb.STBTTBakedChar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A file of images and fonts decoded ahead of time by {@link AssetPacker}, so that loading them is just a copy to the
+ * graphics card.
+ *
+ * Once a pack is mounted, images and fonts it holds are loaded from it instead of from their own files, which don't
+ * need to exist. The pack is memory-mapped rather than read, so only the parts that are used are ever paged in, and
+ * they don't count against the Java heap.
+ *
+ * The format is little-endian: a header of the magic number, the version and the number of entries, then an index
+ * entry for each asset (its path, type, font size, and the offset and length of its data), then the data itself. An
+ * image's data is its width and height followed by its RGBA pixels; a font's is its bitmap's width and height, the
+ * number of glyphs, the glyph positions as stb_truetype lays them out, and then the bitmap's RGBA pixels.
+ */
+public class AssetPack {
+    static final int MAGIC = 0x4b504742; // "BGPK"
+    static final int VERSION = 1;
+    static final byte TYPE_IMAGE = 0;
+    static final byte TYPE_FONT = 1;
+
+    static class PackedImage {
+        final int width;
+        final int height;
+        final ByteBuffer rgba;
+
+        PackedImage(int width, int height, ByteBuffer rgba) {
+            this.width = width;
+            this.height = height;
+            this.rgba = rgba;
+        }
+    }
+
+    static class PackedFont {
+        final int width;
+        final int height;
+        final ByteBuffer chars;
+        final ByteBuffer rgba;
+
+        PackedFont(int width, int height, ByteBuffer chars, ByteBuffer rgba) {
+            this.width = width;
+            this.height = height;
+            this.chars = chars;
+            this.rgba = rgba;
+        }
+    }
+
+    private static final Map<String, PackedImage> images = new HashMap<>();
+    private static final Map<String, PackedFont> fonts = new HashMap<>();
+
+    /**
+     * Seal the class.
+     */
+    private AssetPack() {}
+
+    /**
+     * Load images and fonts from the given pack from now on. Assets that are already loaded are unaffected. If several
+     * packs hold the same asset, the one mounted last is used.
+     */
+    public static synchronized void mount(String packFile) {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(Paths.get(packFile), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new BagelError("Asset pack `" + packFile + "` is larger than 2GB; split it into several packs");
+            }
+            // The mapping stays valid after the channel is closed
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new BagelError("Error loading asset pack `" + packFile + "`: " + e.getClass().getName() + ": "
+                    + e.getMessage());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        try {
+            if (data.getInt() != MAGIC) {
+                throw new BagelError("Malformed asset pack `" + packFile + "`: not an asset pack");
+            }
+            int version = data.getInt();
+            if (version != VERSION) {
+                throw new BagelError("Malformed asset pack `" + packFile + "`: unsupported version " + version
+                        + " (expected " + VERSION + ")");
+            }
+            int count = data.getInt();
+            for (int i = 0; i < count; ++i) {
+                byte[] pathBytes = new byte[data.getShort() & 0xffff];
+                data.get(pathBytes);
+                String path = TextureManager.canonicalPath(new String(pathBytes, StandardCharsets.UTF_8));
+                byte type = data.get();
+                int fontSize = data.getInt();
+                ByteBuffer entry = slice(packFile, data, data.getLong(), data.getLong());
+                if (type == TYPE_IMAGE) {
+                    images.put(path, readImage(packFile, entry));
+                } else if (type == TYPE_FONT) {
+                    fonts.put(fontKey(path, fontSize), readFont(packFile, entry));
+                } else {
+                    throw new BagelError("Malformed asset pack `" + packFile + "`: unknown type " + type + " for `"
+                            + path + "`");
+                }
+            }
+        } catch (RuntimeException e) {
+            if (e instanceof BagelError) {
+                throw e;
+            }
+            throw new BagelError("Malformed asset pack `" + packFile + "`: " + e.getClass().getName() + ": "
+                    + e.getMessage());
+        }
+    }
+
+    private static ByteBuffer slice(String packFile, ByteBuffer data, long offset, long length) {
+        if (offset < 0 || length < 0 || offset + length > data.capacity()) {
+            throw new BagelError("Malformed asset pack `" + packFile + "`: entry at " + offset
+                    + " of length " + length + " is outside the file");
+        }
+        ByteBuffer dup = data.duplicate();
+        dup.position((int) offset).limit((int) (offset + length));
+        return dup.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static PackedImage readImage(String packFile, ByteBuffer entry) {
+        int width = entry.getInt();
+        int height = entry.getInt();
+        return new PackedImage(width, height, slice(packFile, entry, entry.position(), (long) width * height * 4));
+    }
+
+    private static PackedFont readFont(String packFile, ByteBuffer entry) {
+        int width = entry.getInt();
+        int height = entry.getInt();
+        int charCount = entry.getInt();
+        if (charCount != InternalFont.NUM_CHARS) {
+            throw new BagelError("Malformed asset pack `" + packFile + "`: font has " + charCount
+                    + " glyphs (expected " + InternalFont.NUM_CHARS + ")");
+        }
+        ByteBuffer chars = slice(packFile, entry, entry.position(), (long) charCount * STBTTBakedChar.SIZEOF);
+        ByteBuffer rgba = slice(packFile, entry, entry.position() + chars.capacity(), (long) width * height * 4);
+        return new PackedFont(width, height, chars, rgba);
+    }
+
+    private static String fontKey(String path, int size) {
+        return path + "@" + size;
+    }
+
+    /**
+     * Returns the packed image at the given canonical path, or null if no mounted pack holds it.
+     */
+    static synchronized PackedImage getImage(String path) {
+        return images.get(path);
+    }
+
+    /**
+     * Returns the given font packed at the given size, or null if no mounted pack holds it.
+     */
+    static synchronized PackedFont getFont(String filename, int size) {
+        return fonts.get(fontKey(TextureManager.canonicalPath(filename), size));
+    }
+}
@@ -0,0 +1,183 @@
+package bagel;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.stb.STBTTBakedChar;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Builds an {@link AssetPack} from directories of images and fonts, ahead of time, so that the game never decodes them.
+ *
+ * Run it from the directory the game runs in, so the paths stored in the pack match the ones the game loads:
+ *
+ * <pre>
+ * java -cp bagel.jar bagel.AssetPacker assets.pack res --font-sizes 16,24
+ * </pre>
+ *
+ * Images (png, jpg, bmp, tga and gif) are stored as RGBA pixels. Fonts (ttf and otf) are baked at each of the given
+ * sizes; fonts used at other sizes are still loaded from their files.
+ */
+public class AssetPacker {
+    private static final int HEADER_BYTES = 12;
+    // Path length, type, font size, offset and length
+    private static final int INDEX_ENTRY_BYTES = 2 + 1 + 4 + 8 + 8;
+
+    private static class Entry {
+        final String path;
+        final byte type;
+        final int fontSize;
+        long offset;
+        long length;
+
+        Entry(String path, byte type, int fontSize) {
+            this.path = path;
+            this.type = type;
+            this.fontSize = fontSize;
+        }
+    }
+
+    /**
+     * Seal the class.
+     */
+    private AssetPacker() {}
+
+    public static void main(String[] args) throws IOException {
+        List<String> dirs = new ArrayList<>();
+        List<Integer> fontSizes = new ArrayList<>();
+        String output = null;
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].equals("--font-sizes") && i + 1 < args.length) {
+                for (String size : args[++i].split(",")) {
+                    fontSizes.add(Integer.parseInt(size.trim()));
+                }
+            } else if (output == null) {
+                output = args[i];
+            } else {
+                dirs.add(args[i]);
+            }
+        }
+        if (output == null || dirs.isEmpty()) {
+            System.out.println("Usage: AssetPacker <output file> <asset directory>... [--font-sizes 16,24]");
+            System.exit(1);
+        }
+        pack(output, dirs, fontSizes);
+    }
+
+    /**
+     * Write a pack of every image in the given directories, and every font at each of the given sizes.
+     */
+    static void pack(String output, List<String> dirs, List<Integer> fontSizes) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (String dir : dirs) {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(Paths.get(dir))) {
+                files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path file : files) {
+                String path = file.toString().replace('\\', '/');
+                String name = path.toLowerCase();
+                if (name.matches(".*\\.(png|jpe?g|bmp|tga|gif)")) {
+                    entries.add(new Entry(path, AssetPack.TYPE_IMAGE, 0));
+                } else if (name.matches(".*\\.(ttf|otf)")) {
+                    for (int size : fontSizes) {
+                        entries.add(new Entry(path, AssetPack.TYPE_FONT, size));
+                    }
+                }
+            }
+        }
+
+        long dataStart = HEADER_BYTES;
+        for (Entry entry : entries) {
+            dataStart += INDEX_ENTRY_BYTES + entry.path.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(output), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // The data goes after the index, which is written once every entry's offset is known
+            channel.position(dataStart);
+            for (Entry entry : entries) {
+                entry.offset = channel.position();
+                if (entry.type == AssetPack.TYPE_IMAGE) {
+                    writeImage(channel, entry.path);
+                } else {
+                    writeFont(channel, entry.path, entry.fontSize);
+                }
+                entry.length = channel.position() - entry.offset;
+            }
+
+            ByteBuffer index = ByteBuffer.allocate((int) dataStart).order(ByteOrder.LITTLE_ENDIAN);
+            index.putInt(AssetPack.MAGIC).putInt(AssetPack.VERSION).putInt(entries.size());
+            for (Entry entry : entries) {
+                byte[] path = entry.path.getBytes(StandardCharsets.UTF_8);
+                index.putShort((short) path.length).put(path)
+                        .put(entry.type).putInt(entry.fontSize).putLong(entry.offset).putLong(entry.length);
+            }
+            index.flip();
+            channel.position(0);
+            writeFully(channel, index);
+        }
+        System.out.println("[Bagel] packed " + entries.size() + " assets into " + output);
+    }
+
+    private static void writeImage(FileChannel channel, String filename) throws IOException {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer components = stack.mallocInt(1);
+
+            ByteBuffer fname = IOUtils.stringToByteBuffer(stack, filename + '\0');
+            ByteBuffer image = NativeMemory.trackImage(STBImage.stbi_load(fname, w, h, components, 4));
+            if (image == null) {
+                throw new BagelError("Error loading image: " + filename + ": " + STBImage.stbi_failure_reason());
+            }
+            try {
+                writeFully(channel, header(stack, w.get(0), h.get(0)));
+                writeFully(channel, image);
+            } finally {
+                NativeMemory.freeImage(image);
+            }
+        }
+    }
+
+    private static void writeFont(FileChannel channel, String filename, int size) throws IOException {
+        InternalFont.Baked baked = InternalFont.bake(filename, size);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            writeFully(channel, header(stack, baked.width, baked.height, InternalFont.NUM_CHARS));
+            writeFully(channel, MemoryUtil.memByteBuffer(baked.chars.address(),
+                    InternalFont.NUM_CHARS * STBTTBakedChar.SIZEOF));
+            writeFully(channel, baked.rgba);
+        } finally {
+            baked.free();
+        }
+    }
+
+    private static ByteBuffer header(MemoryStack stack, int... values) {
+        ByteBuffer header = stack.malloc(values.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (int value : values) {
+            header.putInt(value);
+        }
+        header.flip();
+        return header;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package bagel;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes images on background threads and uploads them to the graphics card a few at a time, so that loading a level
+ * doesn't freeze the game.
+ *
+ * Decoding happens on a pool of daemon threads. Each frame, before the update, the main thread uploads decoded images
+ * through a pixel buffer object until the frame's upload budget is spent; at least one image is uploaded every frame,
+ * so loading always makes progress. The textures exist from the moment loading starts, but report that they aren't
+ * ready until their pixels are on the graphics card.
+ */
+class AsyncTextureLoader {
+    private static final long DEFAULT_BUDGET_NANOS = 2_000_000;
+
+    private static class Decoded {
+        final Texture tex;
+        final ByteBuffer pixels;
+
+        Decoded(Texture tex, ByteBuffer pixels) {
+            this.tex = tex;
+            this.pixels = pixels;
+        }
+    }
+
+    private static ExecutorService decoders = null;
+    private static final Queue<Decoded> decoded = new ConcurrentLinkedQueue<>();
+    // Textures whose files couldn't be decoded, to be dropped from the cache by the main thread
+    private static final Queue<Texture> failed = new ConcurrentLinkedQueue<>();
+    // Images that have started loading but aren't ready yet
+    private static final AtomicInteger loading = new AtomicInteger();
+    private static volatile long budgetNanos = DEFAULT_BUDGET_NANOS;
+    // Reused for every upload, and orphaned each time so an upload never waits for the previous one
+    private static int pixelBuffer = 0;
+
+    /**
+     * Seal the class.
+     */
+    private AsyncTextureLoader() {}
+
+    /**
+     * Start decoding the given file into a pending RGBA texture.
+     */
+    static synchronized void load(String filename, Texture tex) {
+        if (decoders == null) {
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            decoders = Executors.newFixedThreadPool(threads, r -> {
+                Thread thread = new Thread(r, "Bagel image decoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        loading.incrementAndGet();
+        decoders.execute(() -> decode(filename, tex));
+    }
+
+    private static void decode(String filename, Texture tex) {
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+        boolean queued = false;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer components = stack.mallocInt(1);
+
+            ByteBuffer fname = IOUtils.stringToByteBuffer(stack, filename + '\0');
+            long decodeStart = System.nanoTime();
+            ByteBuffer image = NativeMemory.trackImage(STBImage.stbi_load(fname, w, h, components, 4));
+            if (image == null) {
+                fail(tex, "Error loading image: " + filename + ": " + STBImage.stbi_failure_reason());
+                return;
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.width = w.get(0);
+                event.height = h.get(0);
+                event.bytes = (long) w.get(0) * h.get(0) * 4;
+                event.decodeTime = System.nanoTime() - decodeStart;
+                event.atlas = false;
+                event.commit();
+            }
+            decoded.add(new Decoded(tex, image));
+            queued = true;
+        } catch (RuntimeException e) {
+            fail(tex, "Error loading image: " + filename + ": " + e.getClass().getName() + ": " + e.getMessage());
+        } finally {
+            // Decoded images stop counting as loading once they're uploaded
+            if (!queued) {
+                loading.decrementAndGet();
+            }
+        }
+    }
+
+    private static void fail(Texture tex, String error) {
+        tex.fail(error);
+        failed.add(tex);
+    }
+
+    /**
+     * Set how long the main thread may spend uploading decoded images each frame.
+     */
+    static void setBudget(long nanos) {
+        if (nanos < 0) {
+            throw new BagelError("Invalid upload budget: " + nanos + "ns");
+        }
+        budgetNanos = nanos;
+    }
+
+    /**
+     * Returns the number of images that are loading in the background and aren't ready to draw yet.
+     */
+    static int getLoadingCount() {
+        return loading.get();
+    }
+
+    /**
+     * Drop failed images from the cache, then upload decoded images until this frame's budget is spent. Must be called
+     * on the main thread while no update is running.
+     */
+    static void uploadDecoded() {
+        // Loading a failed file again should try again, and report the error if it fails
+        for (Texture tex = failed.poll(); tex != null; tex = failed.poll()) {
+            TextureManager.forget(tex);
+        }
+        if (decoded.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long budget = budgetNanos;
+        if (pixelBuffer == 0) {
+            pixelBuffer = GL15.glGenBuffers();
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, pixelBuffer);
+        try {
+            Decoded next;
+            do {
+                next = decoded.poll();
+                if (next != null) {
+                    upload(next);
+                }
+            } while (next != null && System.nanoTime() - start < budget);
+        } finally {
+            // Other uploads read their pixels from client memory
+            GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+        }
+    }
+
+    private static void upload(Decoded image) {
+        try {
+            long bytes = (long) image.tex.w * image.tex.h * 4;
+            GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, bytes, GL15.GL_STREAM_DRAW);
+            ByteBuffer mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_UNPACK_BUFFER, 0, bytes,
+                    GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_BUFFER_BIT);
+            if (mapped == null) {
+                throw new BagelError("Failed to map pixel buffer for " + image.tex);
+            }
+            mapped.put(image.pixels);
+            GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+            // The copy from the pixel buffer into the texture happens on the graphics card's own time
+            image.tex.uploadPending();
+        } finally {
+            NativeMemory.freeImage(image.pixels);
+            loading.decrementAndGet();
+        }
+    }
+
+    /**
+     * Stop decoding, and free anything decoded but not yet uploaded.
+     */
+    static synchronized void destroy() {
+        if (decoders != null) {
+            decoders.shutdownNow();
+            decoders = null;
+        }
+        for (Decoded image = decoded.poll(); image != null; image = decoded.poll()) {
+            NativeMemory.freeImage(image.pixels);
+        }
+        failed.clear();
+        loading.set(0);
+        if (pixelBuffer != 0) {
+            GL15.glDeleteBuffers(pixelBuffer);
+            pixelBuffer = 0;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package bagel;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single texture that many small images are packed into.
+ */
+class AtlasPage {
+    private final Texture tex;
+    private final SkylinePacker packer;
+
+    AtlasPage(int index, int size, int padding) {
+        tex = new Texture("atlas page " + index, size, size, null);
+        packer = new SkylinePacker(size, size, padding);
+    }
+
+    /**
+     * Copy an RGBA image into free space on the page.
+     *
+     * @return the region the image now occupies, or null if the page is full
+     */
+    TextureRegion add(int w, int h, ByteBuffer rgba) {
+        int[] position = packer.insert(w, h);
+        if (position == null) {
+            return null;
+        }
+        tex.upload(position[0], position[1], w, h, rgba);
+        return new TextureRegion(tex, position[0], position[1], w, h);
+    }
+
+    void destroy() {
+        tex.destroy();
+    }
+}
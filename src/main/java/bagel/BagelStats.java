@@ -0,0 +1,144 @@
+package bagel;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the statistics published through {@link BagelStatsMXBean}. Frames are recorded from the main loop; the
+ * getters are called from JMX threads.
+ */
+class BagelStats implements BagelStatsMXBean {
+    private static final int WINDOW = 600;
+
+    private final long droppedFrameNanos;
+    private final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+    private final float[] frameTimes = new float[WINDOW];
+    private final float[] sorted = new float[WINDOW];
+    private int nextFrame = 0;
+    private int recorded = 0;
+    private long frames = 0;
+    private long droppedFrames = 0;
+    private long gcMillis = 0;
+    private long lastGcMillis;
+
+    /**
+     * @param refreshRate the monitor's refresh rate in Hz, used to tell when a frame was dropped
+     */
+    BagelStats(int refreshRate) {
+        droppedFrameNanos = (long) (1.5e9 / (refreshRate > 0 ? refreshRate : 60));
+        lastGcMillis = totalGcMillis();
+    }
+
+    private long totalGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : collectors) {
+            // -1 means the collector doesn't report times
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+
+    /**
+     * Record a frame that took the given time.
+     */
+    synchronized void recordFrame(long nanos) {
+        frameTimes[nextFrame] = nanos / 1e6f;
+        nextFrame = (nextFrame + 1) % WINDOW;
+        recorded = Math.min(recorded + 1, WINDOW);
+        ++frames;
+        if (nanos > droppedFrameNanos) {
+            ++droppedFrames;
+        }
+        long gc = totalGcMillis();
+        gcMillis += gc - lastGcMillis;
+        lastGcMillis = gc;
+    }
+
+    private synchronized double percentile(double percentile) {
+        if (recorded == 0) {
+            return 0;
+        }
+        System.arraycopy(frameTimes, 0, sorted, 0, recorded);
+        Arrays.sort(sorted, 0, recorded);
+        int rank = (int) Math.ceil(percentile / 100 * recorded) - 1;
+        return sorted[Math.max(0, Math.min(recorded - 1, rank))];
+    }
+
+    @Override
+    public double getFrameTimeP50() {
+        return percentile(50);
+    }
+
+    @Override
+    public double getFrameTimeP95() {
+        return percentile(95);
+    }
+
+    @Override
+    public double getFrameTimeP99() {
+        return percentile(99);
+    }
+
+    @Override
+    public synchronized long getFrames() {
+        return frames;
+    }
+
+    @Override
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public int getQueuedRenderJobs() {
+        return RenderStats.getJobs();
+    }
+
+    @Override
+    public int getLoadedTextures() {
+        return TextureManager.getTextureCount();
+    }
+
+    @Override
+    public long getEstimatedTextureBytes() {
+        return TextureManager.getTextureBytes();
+    }
+
+    @Override
+    public int getLoadedFonts() {
+        return TextureManager.getFontCount();
+    }
+
+    @Override
+    public long getNativeBytes() {
+        return NativeMemory.getBytes();
+    }
+
+    @Override
+    public long getNativeBuffers() {
+        return NativeMemory.getBuffers();
+    }
+
+    @Override
+    public Map<String, Long> getNativeBytesByKind() {
+        return NativeMemory.getBytesByKind();
+    }
+
+    @Override
+    public synchronized long getGcPauseMillis() {
+        return gcMillis;
+    }
+
+    @Override
+    public synchronized void reset() {
+        nextFrame = 0;
+        recorded = 0;
+        frames = 0;
+        droppedFrames = 0;
+        gcMillis = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package bagel;
+
+import java.util.Map;
+
+/**
+ * Live statistics about a running game, for monitoring with JMX tools such as JConsole or VisualVM.
+ *
+ * While a window is open, these are registered with the platform MBean server under the name
+ * {@value #OBJECT_NAME}. Counters cover the time since the window opened or since {@link #reset()} was last called;
+ * percentiles cover the last few seconds of frames.
+ */
+public interface BagelStatsMXBean {
+    /**
+     * The name the statistics are registered under.
+     */
+    String OBJECT_NAME = "bagel:type=Stats";
+
+    /**
+     * Returns the median time taken by recent frames, in milliseconds.
+     */
+    double getFrameTimeP50();
+
+    /**
+     * Returns the 95th percentile of the time taken by recent frames, in milliseconds.
+     */
+    double getFrameTimeP95();
+
+    /**
+     * Returns the 99th percentile of the time taken by recent frames, in milliseconds.
+     */
+    double getFrameTimeP99();
+
+    /**
+     * Returns the number of frames drawn.
+     */
+    long getFrames();
+
+    /**
+     * Returns the number of frames that took more than one and a half refreshes of the monitor, and so were shown late.
+     */
+    long getDroppedFrames();
+
+    /**
+     * Returns the number of images, shapes and glyphs drawn in the last frame.
+     */
+    int getQueuedRenderJobs();
+
+    /**
+     * Returns the number of textures loaded, including atlas pages.
+     */
+    int getLoadedTextures();
+
+    /**
+     * Returns an estimate of the graphics memory used by textures and fonts, in bytes.
+     */
+    long getEstimatedTextureBytes();
+
+    /**
+     * Returns the number of fonts loaded; each size of a font counts separately.
+     */
+    int getLoadedFonts();
+
+    /**
+     * Returns the memory bagel currently has allocated outside the Java heap, in bytes. This should level off once a
+     * game has loaded its assets; steady growth points to a leak.
+     */
+    long getNativeBytes();
+
+    /**
+     * Returns the number of buffers bagel currently has allocated outside the Java heap.
+     */
+    long getNativeBuffers();
+
+    /**
+     * Returns {@link #getNativeBytes()} split by what the memory is for: image_decode, font, staging and render_queue.
+     */
+    Map<String, Long> getNativeBytesByKind();
+
+    /**
+     * Returns the total time the garbage collector reported spending while frames were running, in milliseconds.
+     */
+    long getGcPauseMillis();
+
+    /**
+     * Restart the counters and percentiles, so that each reading covers the time since the last one.
+     */
+    void reset();
+}
@@ -0,0 +1,33 @@
+package bagel;
+
+/**
+ * Renders the queue by collecting consecutive jobs that share a texture into batches, so that each run costs a single
+ * draw call. Jobs using a shader other than the default one are drawn on their own, in order.
+ */
+class BatchRenderer implements Renderer {
+    private final SpriteBatch batch;
+
+    BatchRenderer(SpriteBatch batch) {
+        this.batch = batch;
+    }
+
+    @Override
+    public void render(RenderQueue queue) {
+        Shader defaultShader = DefaultShader.get();
+        for (int job = 0; job < queue.size(); ++job) {
+            if (queue.shader(job) == defaultShader) {
+                batch.add(queue, job);
+            } else {
+                // Preserve the painter's order by drawing everything before this job first
+                batch.flush();
+                ImmediateRenderer.drawJob(queue, job);
+            }
+        }
+        batch.flush();
+    }
+
+    @Override
+    public void free() {
+        batch.free();
+    }
+}
@@ -0,0 +1,135 @@
+package bagel;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Draws many sprites that share a texture with a single draw call.
+ *
+ * Rather than sending each sprite's transform as uniforms, the four corners of every sprite are transformed on the CPU
+ * (exactly as default.vert would) and written into a {@link StreamBuffer}.
+ */
+class BatchShader extends SpriteBatch {
+    /**
+     * The most sprites that fit in a single draw call; chosen so that every vertex can be addressed by a short index.
+     */
+    static final int MAX_QUADS = 4096;
+    // position (2), texture coordinate (2), blend colour (4)
+    private static final int FLOATS_PER_VERTEX = 8;
+    private static final int VERTICES_PER_QUAD = 4;
+    private static final int MAX_BYTES = MAX_QUADS * VERTICES_PER_QUAD * FLOATS_PER_VERTEX * Float.BYTES;
+
+    private final int shaderProgram;
+    private final int vaoId;
+    private final int indexVboId;
+    // Room for two full batches in each region, so that a region isn't used up by a single batch
+    private final StreamBuffer stream = new StreamBuffer(2 * MAX_BYTES);
+    // The space reserved for the current batch, or null if nothing has been written to it yet
+    private FloatBuffer vertices = null;
+
+    /**
+     * Initialise the shader and its buffers.
+     */
+    BatchShader() {
+        super(MAX_QUADS);
+        shaderProgram = Shader.generateShaderProgram("batch.vert", "batch.frag");
+
+        vaoId = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(vaoId);
+
+        // The attributes are pointed at wherever each batch's vertices end up in the stream buffer
+        pointAttributes(0);
+        GL20.glEnableVertexAttribArray(0);
+        GL20.glEnableVertexAttribArray(1);
+        GL20.glEnableVertexAttribArray(2);
+
+        // The indices never change, so they can be uploaded once: every quad uses the same pattern as QUAD_INDICES
+        ByteBuffer indexBytes = NativeMemory.alloc(NativeMemory.Kind.STAGING,
+                MAX_QUADS * QUAD_INDICES.length * Short.BYTES);
+        ShortBuffer indices = indexBytes.asShortBuffer();
+        for (int quad = 0; quad < MAX_QUADS; ++quad) {
+            for (byte index : QUAD_INDICES) {
+                indices.put((short) (quad * VERTICES_PER_QUAD + index));
+            }
+        }
+        indices.flip();
+        indexVboId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+        NativeMemory.free(NativeMemory.Kind.STAGING, indexBytes);
+
+        // Set up the shader
+        GL20.glUseProgram(shaderProgram);
+        GL20.glUniform1f(GL20.glGetUniformLocation(shaderProgram, "width"), Window.getWidth());
+        GL20.glUniform1f(GL20.glGetUniformLocation(shaderProgram, "height"), Window.getHeight());
+
+        // Leave the GL state as the other shaders expect to find it
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        Shader.resetBinding();
+    }
+
+    @Override
+    protected void bindInternal() {
+        GL20.glUseProgram(shaderProgram);
+        GL30.glBindVertexArray(vaoId);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+    }
+
+    private void pointAttributes(long offset) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, stream.getId());
+        int stride = FLOATS_PER_VERTEX * Float.BYTES;
+        GL20.glVertexAttribPointer(0, 2, GL11.GL_FLOAT, false, stride, offset);
+        GL20.glVertexAttribPointer(1, 2, GL11.GL_FLOAT, false, stride, offset + 2 * Float.BYTES);
+        GL20.glVertexAttribPointer(2, 4, GL11.GL_FLOAT, false, stride, offset + 4 * Float.BYTES);
+    }
+
+    @Override
+    void write(RenderQueue queue, int job) {
+        if (vertices == null) {
+            vertices = stream.reserve(MAX_BYTES).asFloatBuffer();
+        }
+        // Same transformation as default.vert: cover only the section, scale to the texture size, rotate, then translate
+        Texture tex = queue.texture(job);
+        float xScale = tex.w * queue.xScale(job);
+        float yScale = tex.h * queue.yScale(job);
+        float rotation = queue.rotation(job);
+        float cos = (float) Math.cos(rotation);
+        float sin = (float) Math.sin(rotation);
+        float xOffset = queue.xOffset(job);
+        float yOffset = queue.yOffset(job);
+        float xMax = queue.xMax(job);
+        float yMax = queue.yMax(job);
+        for (int i = 0; i < QUAD_VERTICES.length; i += 5) {
+            float u = xOffset + (xMax - xOffset) * QUAD_VERTICES[i + 3];
+            float v = yOffset + (yMax - yOffset) * QUAD_VERTICES[i + 4];
+            float x = (u - 0.5f) * xScale;
+            float y = (v - 0.5f) * yScale;
+            vertices.put(queue.x(job) + cos * x - sin * y)
+                    .put(queue.y(job) + sin * x + cos * y)
+                    .put(u)
+                    .put(v)
+                    .put(queue.rBlend(job)).put(queue.gBlend(job)).put(queue.bBlend(job)).put(queue.aBlend(job));
+        }
+    }
+
+    @Override
+    void draw(int quadCount) {
+        pointAttributes(stream.commit(vertices.position() * Float.BYTES));
+        GL11.glDrawElements(GL11.GL_TRIANGLES, quadCount * QUAD_INDICES.length, GL11.GL_UNSIGNED_SHORT, 0);
+        vertices = null;
+    }
+
+    @Override
+    void free() {
+        stream.free();
+        GL15.glDeleteBuffers(indexVboId);
+        GL30.glDeleteVertexArrays(vaoId);
+        GL20.glDeleteProgram(shaderProgram);
+    }
+}
@@ -8,6 +8,7 @@ import org.lwjgl.opengl.GL30;
  * Handles the GLSL vertex and fragment shaders.
  */
 class DefaultShader extends Shader {
+    private final int shaderProgram;
     private final int vaoId;
     private final int vboId;
 
@@ -33,7 +34,7 @@ class DefaultShader extends Shader {
      */
     private DefaultShader() {
         // Compile the shader and create buffer objects
-        int shaderProgram = Shader.generateShaderProgram("default.vert", "default.frag");
+        shaderProgram = Shader.generateShaderProgram("default.vert", "default.frag");
         vaoId = Shader.generateVaoId();
         vboId = Shader.generateVboId();
 
@@ -55,21 +56,22 @@ class DefaultShader extends Shader {
         GL20.glUniform1f(heightUniformLocation, Window.getHeight());
     }
 
-    private void setUniforms(RenderInfo info) {
+    private void setUniforms(RenderQueue queue, int job) {
         // Assign values to the shader
-        GL20.glUniform3f(positionUniformLocation, info.x, info.y, 0);
-        GL20.glUniform3f(scaleUniformLocation, (float) info.tex.w * info.xScale, (float) info.tex.h * info.yScale, 1);
-        GL20.glUniform1f(rotationUniformLocation, info.rotation);
-        GL20.glUniform4f(blendUniformLocation, info.rBlend, info.gBlend, info.bBlend, info.aBlend);
-        GL20.glUniform1f(xOffUniformLocation, info.xOffset);
-        GL20.glUniform1f(yOffUniformLocation, info.yOffset);
-        GL20.glUniform1f(xMaxUniformLocation, info.xMax);
-        GL20.glUniform1f(yMaxUniformLocation, info.yMax);
-//        System.out.println("Drawing section (" + info.xOffset + ", " + info.yOffset + ") to (" + info.xMax + ", " + info.yMax + ") at (" + info.x + ", " + info.y + ")");
+        Texture tex = queue.texture(job);
+        GL20.glUniform3f(positionUniformLocation, queue.x(job), queue.y(job), 0);
+        GL20.glUniform3f(scaleUniformLocation, (float) tex.w * queue.xScale(job), (float) tex.h * queue.yScale(job), 1);
+        GL20.glUniform1f(rotationUniformLocation, queue.rotation(job));
+        GL20.glUniform4f(blendUniformLocation, queue.rBlend(job), queue.gBlend(job), queue.bBlend(job), queue.aBlend(job));
+        GL20.glUniform1f(xOffUniformLocation, queue.xOffset(job));
+        GL20.glUniform1f(yOffUniformLocation, queue.yOffset(job));
+        GL20.glUniform1f(xMaxUniformLocation, queue.xMax(job));
+        GL20.glUniform1f(yMaxUniformLocation, queue.yMax(job));
     }
 
     @Override
     protected void bindInternal() {
+        GL20.glUseProgram(shaderProgram);
         GL30.glBindVertexArray(vaoId);
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboId);
     }
@@ -78,8 +80,8 @@ class DefaultShader extends Shader {
      * Perform a render operation.
      */
     @Override
-    void render(RenderInfo info) {
-        setUniforms(info);
+    void render(RenderQueue queue, int job) {
+        setUniforms(queue, job);
         drawElements();
     }
 }
@@ -2,35 +2,103 @@ package bagel;
 
 import bagel.util.Colour;
 
-import java.util.Optional;
-
 /**
  * Allows you to specify detailed options for drawing images.
  * Used with {@link bagel.Image#draw(double, double, DrawOptions)}.
  *
+ * Options that are drawn with every frame can be built once and frozen with {@link #freeze()}, so that the same object
+ * is shared rather than a new one created for each draw.
+ *
  * @author Eleanor McMurtry
  */
-@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class DrawOptions {
-    private Optional<Float> xscale = Optional.empty();
-    private Optional<Float> yscale = Optional.empty();
-    private Optional<Float> xOffset = Optional.empty();
-    private Optional<Float> yOffset = Optional.empty();
-    private Optional<Float> xMax = Optional.empty();
-    private Optional<Float> yMax = Optional.empty();
-    private Optional<Float> rotation = Optional.empty();
-    private Optional<Float> rBlend = Optional.empty();
-    private Optional<Float> gBlend = Optional.empty();
-    private Optional<Float> bBlend = Optional.empty();
-    private Optional<Float> aBlend = Optional.empty();
-    private Shader shader = DefaultShader.get();
+    // Bits of `set` recording which of the options that change how a job is submitted have been given; the other
+    // options simply use the defaults below until they're set
+    private static final int ROTATION = 1;
+    private static final int SECTION = 1 << 1;
+
+    private int set = 0;
+    private boolean frozen = false;
+    private float xscale = 1;
+    private float yscale = 1;
+    private float xOffset;
+    private float yOffset;
+    private float xMax;
+    private float yMax;
+    private float rotation = 0;
+    private float rBlend = 1;
+    private float gBlend = 1;
+    private float bBlend = 1;
+    private float aBlend = 1;
+    // Null means the default shader; it can't be looked up eagerly, since it needs the window to exist
+    private Shader shader = null;
+
+    /**
+     * Used internally when no options are given.
+     */
+    static final DrawOptions DEFAULT = new DrawOptions().freeze();
+
+    /**
+     * Create a set of options where nothing has been set yet.
+     */
+    public DrawOptions() {
+    }
+
+    /**
+     * Create a modifiable copy of another set of options, such as a frozen preset.
+     */
+    public DrawOptions(DrawOptions other) {
+        set = other.set;
+        xscale = other.xscale;
+        yscale = other.yscale;
+        xOffset = other.xOffset;
+        yOffset = other.yOffset;
+        xMax = other.xMax;
+        yMax = other.yMax;
+        rotation = other.rotation;
+        rBlend = other.rBlend;
+        gBlend = other.gBlend;
+        bBlend = other.bBlend;
+        aBlend = other.aBlend;
+        shader = other.shader;
+    }
+
+    /**
+     * Prevent any further changes to these options, so they can safely be shared and reused every frame. Any setter
+     * called afterwards throws {@link BagelError}.
+     *
+     * @return this object, for convenience
+     */
+    public DrawOptions freeze() {
+        frozen = true;
+        return this;
+    }
+
+    /**
+     * Returns true if {@link #freeze()} has been called on these options.
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void mark(int option) {
+        checkNotFrozen();
+        set |= option;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new BagelError("Cannot modify frozen DrawOptions; copy them with new DrawOptions(options) first");
+        }
+    }
 
     /**
      * Set the scale of the image. A value of 1.0 results in no stretching.
      */
     public DrawOptions setScale(double xscale, double yscale) {
-        this.xscale = Optional.of((float) xscale);
-        this.yscale = Optional.of((float) yscale);
+        checkNotFrozen();
+        this.xscale = (float) xscale;
+        this.yscale = (float) yscale;
         return this;
     }
 
@@ -38,7 +106,8 @@ public class DrawOptions {
      * Set the rotation of the image in the usual mathematical sense, measured in radians.
      */
     public DrawOptions setRotation(double rotation) {
-        this.rotation = Optional.of((float) rotation);
+        mark(ROTATION);
+        this.rotation = (float) rotation;
         return this;
     }
 
@@ -46,9 +115,10 @@ public class DrawOptions {
      * Sets the colour to blend the image with, where (0.0, 0.0, 0.0) is black and (1.0, 1.0, 1.0) is white.
      */
     public DrawOptions setBlendColour(double r, double g, double b) {
-        rBlend = Optional.of((float) r);
-        gBlend = Optional.of((float) g);
-        bBlend = Optional.of((float) b);
+        checkNotFrozen();
+        rBlend = (float) r;
+        gBlend = (float) g;
+        bBlend = (float) b;
         return this;
     }
 
@@ -57,10 +127,11 @@ public class DrawOptions {
      * @param a the alpha (transparency ratio) to use
      */
     public DrawOptions setBlendColour(double r, double g, double b, double a) {
-        rBlend = Optional.of((float) r);
-        gBlend = Optional.of((float) g);
-        bBlend = Optional.of((float) b);
-        aBlend = Optional.of((float) a);
+        checkNotFrozen();
+        rBlend = (float) r;
+        gBlend = (float) g;
+        bBlend = (float) b;
+        aBlend = (float) a;
         return this;
     }
 
@@ -68,10 +139,11 @@ public class DrawOptions {
      * Sets the colour to blend the image with, using the {@link Colour} class.
      */
     public DrawOptions setBlendColour(Colour colour) {
-        rBlend = Optional.of((float) colour.r);
-        gBlend = Optional.of((float) colour.g);
-        bBlend = Optional.of((float) colour.b);
-        aBlend = Optional.of((float) colour.a);
+        checkNotFrozen();
+        rBlend = (float) colour.r;
+        gBlend = (float) colour.g;
+        bBlend = (float) colour.b;
+        aBlend = (float) colour.a;
         return this;
     }
 
@@ -80,10 +152,11 @@ public class DrawOptions {
      * (xBegin + width, yBegin + height);
      */
     public DrawOptions setSection(double xBegin, double yBegin, double width, double height) {
-        xOffset = Optional.of((float) xBegin);
-        yOffset = Optional.of((float) yBegin);
-        xMax = Optional.of((float) (xBegin + width));
-        yMax = Optional.of((float) (yBegin + height));
+        mark(SECTION);
+        xOffset = (float) xBegin;
+        yOffset = (float) yBegin;
+        xMax = (float) (xBegin + width);
+        yMax = (float) (yBegin + height);
         return this;
     }
 
@@ -93,17 +166,62 @@ public class DrawOptions {
      * Set the shader to use for this rendering job. Setting up uniforms is your problem.
      */
     public DrawOptions setShader(Shader shader) {
+        checkNotFrozen();
         this.shader = shader;
         return this;
     }
 
-    RenderInfo toRenderInfo(Texture tex, float x, float y) {
-        return new RenderInfo(tex, x - xOffset.orElse(0f), y - yOffset.orElse(0f),
-                xOffset.orElse(0f) / tex.w, yOffset.orElse(0f) / tex.h,
-                xMax.orElse((float) tex.w) / tex.w, yMax.orElse((float) tex.h) / tex.h,
-                xscale.orElse(1f), yscale.orElse(1f),
-                rotation.orElse(0f),
-                rBlend.orElse(1f), gBlend.orElse(1f), bBlend.orElse(1f), aBlend.orElse(1f),
-                shader);
+    /**
+     * Add a job drawing the whole texture (or the section of it chosen by these options) to the queue.
+     */
+    void submit(RenderQueue queue, Texture tex, float x, float y) {
+        submit(queue, tex, x, y, 0, 0, tex.w, tex.h);
+    }
+
+    /**
+     * Add a job drawing the region of the texture with top-left (regionX, regionY) and the given size to the queue, as
+     * though the region were a texture of its own. Sections are relative to the region.
+     */
+    void submit(RenderQueue queue, Texture tex, float x, float y,
+                float regionX, float regionY, float regionWidth, float regionHeight) {
+        if ((set & SECTION) != 0) {
+            submit(queue, tex, x, y, regionX, regionY, regionWidth, regionHeight, xOffset, yOffset, xMax, yMax);
+        } else {
+            submit(queue, tex, x, y, regionX, regionY, regionWidth, regionHeight, 0, 0, regionWidth, regionHeight);
+        }
+    }
+
+    /**
+     * Add a job drawing the given section of the texture to the queue, ignoring any section set on these options.
+     * The section is placed as though it had been set with {@link #setSection(double, double, double, double)}.
+     */
+    void submitSection(RenderQueue queue, Texture tex, float x, float y,
+                       float sectionX, float sectionY, float sectionWidth, float sectionHeight) {
+        submit(queue, tex, x, y, 0, 0, tex.w, tex.h,
+                sectionX, sectionY, sectionX + sectionWidth, sectionY + sectionHeight);
+    }
+
+    private void submit(RenderQueue queue, Texture tex, float x, float y,
+                        float regionX, float regionY, float regionWidth, float regionHeight,
+                        float xOff, float yOff, float xEnd, float yEnd) {
+        // The shaders transform about the centre of the whole texture; move that point so that the region behaves as
+        // though it were centred there instead
+        float dx = (tex.w / 2f - (regionX + regionWidth / 2f)) * xscale;
+        float dy = (tex.h / 2f - (regionY + regionHeight / 2f)) * yscale;
+        if ((set & ROTATION) != 0) {
+            float cos = (float) Math.cos(rotation);
+            float sin = (float) Math.sin(rotation);
+            float rotatedX = cos * dx - sin * dy;
+            dy = sin * dx + cos * dy;
+            dx = rotatedX;
+        }
+
+        queue.add(tex, shader == null ? DefaultShader.get() : shader,
+                x - xOff + dx, y - yOff + dy,
+                (regionX + xOff) / tex.w, (regionY + yOff) / tex.h,
+                (regionX + xEnd) / tex.w, (regionY + yEnd) / tex.h,
+                xscale, yscale,
+                rotation,
+                rBlend, gBlend, bBlend, aBlend);
     }
 }
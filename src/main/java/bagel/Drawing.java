@@ -11,31 +11,39 @@ public class Drawing {
      * Draw a rectangle with its top-left at (x, y) with the provided width, height, and colour.
      */
     public static void drawRectangle(double x, double y, double width, double height, Colour colour) {
-        drawRectangle(new Point(x, y), width, height, colour);
+        submitPixel((float) (x + width / 2), (float) (y + height / 2), (float) width, (float) height, 0, colour);
     }
 
     /**
      * Draw a rectangle using a Point to specify the top-left.
      */
     public static void drawRectangle(Point topLeft, double width, double height, Colour colour) {
-        DrawOptions opts = new DrawOptions()
-                .setBlendColour(colour)
-                .setScale(width, height);
-        Window.get().submitRenderJob(opts.toRenderInfo(Texture.singlePixel(), (float) (topLeft.x + width / 2), (float) (topLeft.y + height / 2)));
+        drawRectangle(topLeft.x, topLeft.y, width, height, colour);
     }
 
     /**
      * Draw a line of the given thickness and colour from point a to point b.
      */
     public static void drawLine(Point a, Point b, double thickness, Colour colour) {
-        double w = a.distanceTo(b);
-        double theta = Math.atan2(b.y - a.y, b.x - a.x);
+        drawLine(a.x, a.y, b.x, b.y, thickness, colour);
+    }
+
+    private static void drawLine(double ax, double ay, double bx, double by, double thickness, Colour colour) {
+        double w = Math.hypot(bx - ax, by - ay);
+        double theta = Math.atan2(by - ay, bx - ax);
+        submitPixel((float) ((bx + ax) / 2), (float) ((by + ay) / 2), (float) w, (float) thickness, (float) theta, colour);
+    }
 
-        DrawOptions opts = new DrawOptions()
-                .setBlendColour(colour)
-                .setScale(w, thickness)
-                .setRotation(theta);
-        Window.get().submitRenderJob(opts.toRenderInfo(Texture.singlePixel(), (float) ((b.x + a.x) / 2), (float) ((b.y + a.y) / 2)));
+    /**
+     * Draw the single-pixel texture centred at (x, y), stretched to the given size and rotated.
+     */
+    private static void submitPixel(float x, float y, float width, float height, float rotation, Colour colour) {
+        Window.get().getRenderQueue().add(Texture.singlePixel(), DefaultShader.get(),
+                x, y,
+                0, 0, 1, 1,
+                width, height,
+                rotation,
+                (float) colour.r, (float) colour.g, (float) colour.b, (float) colour.a);
     }
 
     /**
@@ -58,8 +66,8 @@ public class Drawing {
         double stepSize = 1;
         for (double dy = 0; dy < radius; dy += stepSize) {
             int mdx = (int) Math.sqrt(radius * radius - dy * dy);
-            drawLine(new Point(x - mdx - 1, y + dy), new Point(x + mdx, y + dy), 1, colour);
-            drawLine(new Point(x - mdx - 1, y - dy - 1), new Point(x + mdx, y - dy - 1), 1, colour);
+            drawLine(x - mdx - 1, y + dy, x + mdx, y + dy, 1, colour);
+            drawLine(x - mdx - 1, y - dy - 1, x + mdx, y - dy - 1, 1, colour);
         }
     }
 }
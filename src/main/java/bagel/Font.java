@@ -20,7 +20,7 @@ public class Font {
      * The text will be left-aligned.
      */
     public void drawString(String string, double x, double y) {
-        drawString(string, x, y, new DrawOptions());
+        drawString(string, x, y, DrawOptions.DEFAULT);
     }
 
     /**
@@ -0,0 +1,27 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering a font being loaded and baked into a texture.
+ */
+@Name("bagel.FontLoad")
+@Label("Font Load")
+@Category({"Bagel", "Assets"})
+@Description("A font file loaded and baked at one size")
+class FontLoadEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file;
+
+    @Label("Size")
+    int size;
+
+    @Label("Bytes")
+    @Description("Size of the baked texture")
+    @DataAmount
+    long bytes;
+}
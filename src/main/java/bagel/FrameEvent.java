@@ -0,0 +1,35 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event covering one trip around the main loop.
+ */
+@Name("bagel.Frame")
+@Label("Frame")
+@Category({"Bagel", "Rendering"})
+@Description("One frame of the game loop")
+class FrameEvent extends jdk.jfr.Event {
+    @Label("Update")
+    @Description("Time spent in the game's update")
+    @Timespan
+    long update;
+
+    @Label("Render")
+    @Description("Time spent sending the frame's drawing to the graphics card")
+    @Timespan
+    long render;
+
+    @Label("Swap")
+    @Description("Time spent swapping buffers, including waiting for vsync")
+    @Timespan
+    long swap;
+
+    @Label("Jobs")
+    @Description("Number of images, shapes and glyphs drawn")
+    int jobs;
+}
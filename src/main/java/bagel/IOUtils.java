@@ -1,7 +1,6 @@
 package bagel;
 
 import java.util.zip.InflaterInputStream;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.system.MemoryStack;
 
 import java.io.ByteArrayInputStream;
@@ -29,15 +28,23 @@ class IOUtils {
         buffer.rewind();
         return buffer;
     }
-    static ByteBuffer fileToByteBuffer(String filename) throws IOException {
+    /**
+     * Read a whole file into a buffer outside the heap, counted as the given kind. It must be given back to
+     * {@link NativeMemory#free} once it's no longer needed.
+     */
+    static ByteBuffer fileToByteBuffer(String filename, NativeMemory.Kind kind) throws IOException {
         Path path = Paths.get(filename);
-        ByteBuffer buffer;
         try (SeekableByteChannel fc = Files.newByteChannel(path)) {
-            buffer = BufferUtils.createByteBuffer((int) fc.size() + 1);
-            while (fc.read(buffer) != -1);
+            ByteBuffer buffer = NativeMemory.alloc(kind, (int) fc.size() + 1);
+            try {
+                while (fc.read(buffer) != -1);
+            } catch (IOException e) {
+                NativeMemory.free(kind, buffer);
+                throw e;
+            }
+            buffer.flip();
+            return buffer;
         }
-        buffer.flip();
-        return buffer;
     }
 
     static String readResource(String filename) {
@@ -9,71 +9,234 @@ import bagel.util.Rectangle;
  * @author Eleanor McMurtry
  */
 public class Image {
-    private final Texture tex;
+    final Texture tex;
+    // The part of the texture that makes up this image
+    final double regionX;
+    final double regionY;
+    final double regionWidth;
+    final double regionHeight;
+    // Drawn instead of this image until it has finished loading; may be null
+    private final Image placeholder;
+    private boolean disposed = false;
 
     /**
      * Load an image from a file.
      * @param filename the filename to load
      */
     public Image(String filename) {
+        this(loadRegion(filename), null);
+    }
+
+    private static TextureRegion loadRegion(String filename) {
+        // Check that a window exists first
+        Window.get();
+        return TextureManager.getRegion(filename);
+    }
+
+    private Image(TextureRegion region, Image placeholder) {
+        this(region.tex, region.x, region.y, region.w, region.h, placeholder);
+    }
+
+    /**
+     * Start loading an image from a file in the background, and return it straight away. The image draws nothing until
+     * it has loaded; its size is known immediately.
+     *
+     * Decoding happens on other threads, and the main thread uploads a limited amount each frame (see
+     * {@link #setAsyncUploadBudget}), so loading many images this way doesn't freeze the game. Loading the same file
+     * again, with either this or the constructor, gives an image that appears at the same time. If the file can't be
+     * decoded, drawing the image throws a {@link BagelError}, and loading the file again tries again.
+     *
+     * @param filename the filename to load
+     */
+    public static Image loadAsync(String filename) {
+        return loadAsync(filename, null);
+    }
+
+    /**
+     * Like {@link #loadAsync(String)}, but the placeholder image is drawn in the image's place until it has loaded.
+     */
+    public static Image loadAsync(String filename, Image placeholder) {
         // Check that a window exists first
         Window.get();
-        tex = TextureManager.getTexture(filename);
+        return new Image(TextureManager.getAsyncRegion(filename), placeholder);
+    }
+
+    /**
+     * Release this image's hold on its texture. Once no image uses a texture, it can be freed to stay within the budget
+     * set by {@link #setTextureMemoryBudget}; loading the same file again reloads it if it was. The image can't be
+     * drawn afterwards. Disposing an image more than once has no further effect.
+     *
+     * Images packed into the atlas share their texture with other images, so it is never freed early.
+     */
+    public void dispose() {
+        if (!disposed) {
+            disposed = true;
+            TextureManager.release(tex);
+        }
+    }
+
+    /**
+     * Set an estimate of how much graphics memory loaded images may use, in bytes, assuming four bytes per pixel. When
+     * more than this is loaded, the least recently used textures that no undisposed image refers to are freed between
+     * frames, once nothing queued can still draw them. Images still in use are never freed, so the budget can be
+     * exceeded. Unlimited by default.
+     */
+    public static void setTextureMemoryBudget(long bytes) {
+        TextureManager.setBudget(bytes);
+    }
+
+    /**
+     * Returns whether the image has finished loading, and so will be drawn. Only images from {@link #loadAsync} can
+     * return false. Throws a {@link BagelError} if the image failed to load.
+     */
+    public boolean isLoaded() {
+        tex.checkFailed();
+        return tex.isReady();
+    }
+
+    /**
+     * Returns the number of images still loading in the background.
+     */
+    public static int getLoadingCount() {
+        return AsyncTextureLoader.getLoadingCount();
+    }
+
+    /**
+     * Set how long, in milliseconds, each frame may spend sending images loaded with {@link #loadAsync} to the graphics
+     * card. At least one image is sent every frame regardless. Defaults to 2 milliseconds.
+     */
+    public static void setAsyncUploadBudget(double millis) {
+        AsyncTextureLoader.setBudget((long) (millis * 1e6));
+    }
+
+    /**
+     * Pack images loaded from now on into shared atlas textures, so that drawing many different small images needs far
+     * fewer texture switches. This is transparent: images are drawn exactly as before.
+     *
+     * @param pageSize the width and height of each atlas texture, in pixels
+     * @param padding the empty space left between images, in pixels
+     * @param maxImageSize images larger than this in either direction are loaded on their own
+     */
+    public static void enableAtlas(int pageSize, int padding, int maxImageSize) {
+        TextureManager.enableAtlas(pageSize, padding, maxImageSize);
+    }
+
+    /**
+     * Pack images loaded from now on into 2048x2048 atlas textures with 2 pixels of padding. Images larger than 512
+     * pixels in either direction are loaded on their own.
+     *
+     * @see #enableAtlas(int, int, int)
+     */
+    public static void enableAtlas() {
+        enableAtlas(2048, 2, 512);
+    }
+
+    /**
+     * Stop packing newly loaded images into atlas textures. Images that are already packed stay where they are.
+     */
+    public static void disableAtlas() {
+        TextureManager.disableAtlas();
+    }
+
+    /**
+     * Wrap the whole of a texture that wasn't loaded from a file.
+     */
+    Image(Texture tex) {
+        this(tex, 0, 0, tex.w, tex.h, null);
+    }
+
+    private Image(Texture tex, double regionX, double regionY, double regionWidth, double regionHeight,
+                  Image placeholder) {
+        this.tex = tex;
+        this.placeholder = placeholder;
+        this.regionX = regionX;
+        this.regionY = regionY;
+        this.regionWidth = regionWidth;
+        this.regionHeight = regionHeight;
+    }
+
+    /**
+     * Returns the part of this image with its top-left at (x, y) and the given width and height, as an image of its
+     * own. This is useful for sprite sheets: no new texture is loaded, and drawing the sub-image only ever touches the
+     * pixels inside it.
+     *
+     * The sub-image must lie entirely within this image.
+     */
+    public Image getSubImage(double x, double y, double width, double height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > regionWidth || y + height > regionHeight) {
+            throw new BagelError("Sub-image at (" + x + ", " + y + ") with size " + width + "x" + height
+                    + " does not fit inside image of size " + regionWidth + "x" + regionHeight);
+        }
+        // The sub-image keeps the texture alive even if this image is disposed first
+        TextureManager.retain(tex);
+        return new Image(tex, regionX + x, regionY + y, width, height, null);
     }
 
     /**
      * Draw the image with its top-left at (x, y).
      */
     public void drawFromTopLeft(double x, double y) {
-        drawFromTopLeft(x, y, new DrawOptions());
+        drawFromTopLeft(x, y, DrawOptions.DEFAULT);
     }
 
     /**
      * Draw the image with its top-left at (x, y) with extra options.
      */
     public void drawFromTopLeft(double x, double y, DrawOptions options) {
-        draw(x + tex.w / 2.0, y + tex.h / 2.0, options);
+        draw(x + regionWidth / 2, y + regionHeight / 2, options);
     }
 
     /**
      * Draw the image with its centre at (x, y).
      */
     public void draw(double x, double y) {
-        draw(x, y, new DrawOptions());
+        draw(x, y, DrawOptions.DEFAULT);
     }
 
     /**
      * Draw the image with advanced options as described by an {@link DrawOptions} object.
      */
     public void draw(double x, double y, DrawOptions options) {
-        Window.get().submitRenderJob(options.toRenderInfo(tex, (float) x, (float) y));
+        if (disposed) {
+            throw new BagelError("Cannot draw an image after it has been disposed");
+        }
+        if (!tex.isReady()) {
+            // An image that failed to load in the background reports it when drawn, rather than never appearing
+            tex.checkFailed();
+            if (placeholder != null) {
+                placeholder.draw(x, y, options);
+            }
+            return;
+        }
+        options.submit(Window.get().getRenderQueue(), tex, (float) x, (float) y,
+                (float) regionX, (float) regionY, (float) regionWidth, (float) regionHeight);
     }
 
     /**
      * Returns the width of the image in pixels.
      */
     public double getWidth() {
-        return tex.w;
+        return regionWidth;
     }
 
     /**
      * Returns the height of the image in pixels.
      */
     public double getHeight() {
-        return tex.h;
+        return regionHeight;
     }
 
     /**
      * Creates a {@link Rectangle} as defined by this image, located with its top-left at (0, 0).
      */
     public Rectangle getBoundingBox() {
-        return new Rectangle(0, 0, tex.w, tex.h);
+        return new Rectangle(0, 0, regionWidth, regionHeight);
     }
 
     /**
      * Helper method to create a {@link Rectangle} around this image, centred at a {@link Point}.
      */
     public Rectangle getBoundingBoxAt(Point point) {
-        return new Rectangle(point.x - tex.w / 2.0, point.y - tex.h / 2.0, tex.w, tex.h);
+        return new Rectangle(point.x - regionWidth / 2, point.y - regionHeight / 2, regionWidth, regionHeight);
     }
 }
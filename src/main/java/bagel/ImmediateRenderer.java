@@ -0,0 +1,23 @@
+package bagel;
+
+/**
+ * The original rendering path: every job sets its own uniforms and is drawn with its own draw call.
+ */
+class ImmediateRenderer implements Renderer {
+    @Override
+    public void render(RenderQueue queue) {
+        for (int job = 0; job < queue.size(); ++job) {
+            drawJob(queue, job);
+        }
+    }
+
+    /**
+     * Draw a single job with its own shader.
+     */
+    static void drawJob(RenderQueue queue, int job) {
+        Shader shader = queue.shader(job);
+        queue.texture(job).bind();
+        shader.bind();
+        shader.render(queue, job);
+    }
+}
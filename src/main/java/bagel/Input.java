@@ -3,7 +3,7 @@ package bagel;
 import bagel.util.Point;
 import bagel.util.Vector2;
 
-import java.util.HashMap;
+import java.util.EnumMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -15,24 +15,47 @@ import static org.lwjgl.glfw.GLFW.*;
  * @author Eleanor McMurtry
  */
 public class Input {
-    private static final Map<Keys, ButtonState> keyStates = new HashMap<>();
-    private static final Map<MouseButtons, ButtonState> mouseStates = new HashMap<>();
+    private final Map<Keys, ButtonState> keyStates = new EnumMap<>(Keys.class);
+    private final Map<MouseButtons, ButtonState> mouseStates = new EnumMap<>(MouseButtons.class);
 
     private double lastMouseX;
     private double lastMouseY;
     private double xScaling = 0;
     private double yScaling = 0;
 
-    static {
+    /**
+     * Package-private as the instantiation of this class is handled by {@link AbstractGame}.
+     */
+    Input() {
         for (Keys key : Keys.values()) {
             keyStates.put(key, ButtonState.UP);
         }
+        for (MouseButtons button : MouseButtons.values()) {
+            mouseStates.put(button, ButtonState.UP);
+        }
     }
 
     /**
-     * Package-private as the instantiation of this class is handled by {@link AbstractGame}.
+     * Pass on the key and button changes since the last {@link #updateState()} to another input object, along with the
+     * mouse position. Used to hand a snapshot of the input to a game updating on another thread.
+     *
+     * Buttons that haven't changed keep whatever state the other object has; in particular, a press it hasn't passed
+     * to an update yet is not lost.
      */
-    Input() {}
+    void copyChangesTo(Input other) {
+        keyStates.forEach((key, state) -> {
+            if (state == ButtonState.PRESSED || state == ButtonState.RELEASED) {
+                other.keyStates.put(key, state);
+            }
+        });
+        mouseStates.forEach((button, state) -> {
+            if (state == ButtonState.PRESSED || state == ButtonState.RELEASED) {
+                other.mouseStates.put(button, state);
+            }
+        });
+        other.lastMouseX = lastMouseX;
+        other.lastMouseY = lastMouseY;
+    }
 
     /**
      * Called when a keyboard event occurs.
@@ -0,0 +1,109 @@
+package bagel;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Draws many sprites that share a texture with a single instanced draw call.
+ *
+ * Every sprite uses the same unit quad as {@link DefaultShader}; what would have been its uniforms are packed into a
+ * per-instance attribute buffer instead, which is streamed through a {@link StreamBuffer}.
+ */
+class InstancedShader extends SpriteBatch {
+    /**
+     * The most sprites that can be drawn by a single draw call.
+     */
+    static final int MAX_INSTANCES = 16384;
+    // translation (2), scale (2), rotation (1), blend colour (4), section (4)
+    private static final int FLOATS_PER_INSTANCE = 13;
+    private static final int MAX_BYTES = MAX_INSTANCES * FLOATS_PER_INSTANCE * Float.BYTES;
+    private static final int[] ATTRIBUTE_SIZES = { 2, 2, 1, 4, 4 };
+
+    private final int shaderProgram;
+    private final int vaoId;
+    private final int vboId;
+    // Room for two full batches in each region, so that a region isn't used up by a single batch
+    private final StreamBuffer stream = new StreamBuffer(2 * MAX_BYTES);
+    // The space reserved for the current batch, or null if nothing has been written to it yet
+    private FloatBuffer instances = null;
+
+    /**
+     * Initialise the shader and its buffers.
+     */
+    InstancedShader() {
+        super(MAX_INSTANCES);
+        shaderProgram = Shader.generateShaderProgram("instanced.vert", "batch.frag");
+        // This leaves the new vertex array bound, so the instance attributes can be added to it
+        vaoId = Shader.generateVaoId();
+        vboId = Shader.generateVboId();
+
+        // The attributes are pointed at wherever each batch's instances end up in the stream buffer
+        pointAttributes(0);
+        for (int i = 0; i < ATTRIBUTE_SIZES.length; ++i) {
+            int location = i + 2;
+            GL20.glEnableVertexAttribArray(location);
+            GL33.glVertexAttribDivisor(location, 1);
+        }
+
+        // Set up the shader
+        GL20.glUseProgram(shaderProgram);
+        GL20.glUniform1f(GL20.glGetUniformLocation(shaderProgram, "width"), Window.getWidth());
+        GL20.glUniform1f(GL20.glGetUniformLocation(shaderProgram, "height"), Window.getHeight());
+
+        // Leave the GL state as the other shaders expect to find it
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        Shader.resetBinding();
+    }
+
+    @Override
+    protected void bindInternal() {
+        GL20.glUseProgram(shaderProgram);
+        GL30.glBindVertexArray(vaoId);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vboId);
+    }
+
+    private void pointAttributes(long offset) {
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, stream.getId());
+        int stride = FLOATS_PER_INSTANCE * Float.BYTES;
+        int floats = 0;
+        for (int i = 0; i < ATTRIBUTE_SIZES.length; ++i) {
+            GL20.glVertexAttribPointer(i + 2, ATTRIBUTE_SIZES[i], GL11.GL_FLOAT, false, stride,
+                    offset + floats * Float.BYTES);
+            floats += ATTRIBUTE_SIZES[i];
+        }
+    }
+
+    @Override
+    void write(RenderQueue queue, int job) {
+        if (instances == null) {
+            instances = stream.reserve(MAX_BYTES).asFloatBuffer();
+        }
+        Texture tex = queue.texture(job);
+        instances.put(queue.x(job)).put(queue.y(job))
+                 .put(tex.w * queue.xScale(job)).put(tex.h * queue.yScale(job))
+                 .put(queue.rotation(job))
+                 .put(queue.rBlend(job)).put(queue.gBlend(job)).put(queue.bBlend(job)).put(queue.aBlend(job))
+                 .put(queue.xOffset(job)).put(queue.yOffset(job)).put(queue.xMax(job)).put(queue.yMax(job));
+    }
+
+    @Override
+    void draw(int count) {
+        pointAttributes(stream.commit(instances.position() * Float.BYTES));
+        GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, QUAD_INDICES.length, GL11.GL_UNSIGNED_BYTE, 0, count);
+        instances = null;
+    }
+
+    @Override
+    void free() {
+        stream.free();
+        GL15.glDeleteBuffers(vboId);
+        GL30.glDeleteVertexArrays(vaoId);
+        GL20.glDeleteProgram(shaderProgram);
+    }
+}
@@ -1,11 +1,11 @@
 package bagel;
 
-import org.lwjgl.BufferUtils;
 import org.lwjgl.stb.STBTTAlignedQuad;
 import org.lwjgl.stb.STBTTBakedChar;
 import org.lwjgl.stb.STBTTFontinfo;
 import org.lwjgl.stb.STBTruetype;
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
@@ -35,11 +35,10 @@ class FontClassification {
 class InternalFont {
     final FontClassification key;
 
-    private final STBTTFontinfo info;
     private final Texture tex;
     private final STBTTBakedChar.Buffer chars;
     private final int size;
-    private static final int NUM_CHARS = 96;
+    static final int NUM_CHARS = 96;
     private static final int FIRST_CHAR = Byte.MAX_VALUE - NUM_CHARS + 1;
 
     private static int nextPowerOfTwo(double x) {
@@ -47,48 +46,141 @@ class InternalFont {
         return 1 << ((int) (Math.log(x) / log2) + 1);
     }
 
+    /**
+     * A font's glyphs baked into an RGBA bitmap, and where each glyph is within it. Both buffers are tracked native
+     * memory that the owner must free.
+     */
+    static class Baked {
+        final int width;
+        final int height;
+        final ByteBuffer rgba;
+        final STBTTBakedChar.Buffer chars;
+
+        Baked(int width, int height, ByteBuffer rgba, STBTTBakedChar.Buffer chars) {
+            this.width = width;
+            this.height = height;
+            this.rgba = rgba;
+            this.chars = chars;
+        }
+
+        void free() {
+            NativeMemory.free(NativeMemory.Kind.FONT, rgba);
+            freeChars(chars);
+        }
+    }
+
     InternalFont(String fontFile, int size) {
+        this.key = new FontClassification(fontFile, size);
+        this.size = size;
+        Baked baked = bake(fontFile, size);
         try {
-            this.key = new FontClassification(fontFile, size);
-            this.size = size;
-
-            ByteBuffer fontData = IOUtils.fileToByteBuffer(fontFile);
+            tex = new Texture(baked.width, baked.height, baked.rgba);
+        } catch (RuntimeException e) {
+            baked.free();
+            throw e;
+        }
+        // The bitmap has been copied to the graphics card, but the glyph positions are needed for drawing
+        NativeMemory.free(NativeMemory.Kind.FONT, baked.rgba);
+        chars = baked.chars;
+    }
 
-            this.info = STBTTFontinfo.create();
-            if (!STBTruetype.stbtt_InitFont(info, fontData)) {
-                throw new BagelError("Failed to load font `" + fontFile + "`");
-            }
+    /**
+     * Create a font from glyphs baked ahead of time, as stored in an {@link AssetPack}: the glyph positions are
+     * {@link #NUM_CHARS} STBTTBakedChar structs, and the bitmap is width x height RGBA pixels.
+     */
+    InternalFont(String fontFile, int size, int width, int height, ByteBuffer charData, ByteBuffer rgba) {
+        this.key = new FontClassification(fontFile, size);
+        this.size = size;
+        tex = new Texture(width, height, rgba);
+        chars = STBTTBakedChar.malloc(NUM_CHARS);
+        NativeMemory.track(NativeMemory.Kind.FONT, (long) NUM_CHARS * STBTTBakedChar.SIZEOF);
+        MemoryUtil.memCopy(MemoryUtil.memAddress(charData), chars.address(), (long) NUM_CHARS * STBTTBakedChar.SIZEOF);
+    }
 
+    /**
+     * Bake the printable ASCII characters of a font file at the given size.
+     */
+    static Baked bake(String fontFile, int size) {
+        try {
+            // The font file and the single-channel bitmap are only needed until the glyphs are baked
+            ByteBuffer fontData = IOUtils.fileToByteBuffer(fontFile, NativeMemory.Kind.FONT);
             int width = nextPowerOfTwo(size * NUM_CHARS);
             int height = nextPowerOfTwo(size + 1);
-            ByteBuffer bitmap = BufferUtils.createByteBuffer(width * height);
-            chars = STBTTBakedChar.malloc(NUM_CHARS);
+            ByteBuffer bitmap = null;
+            ByteBuffer rgbaBitmap = null;
+            STBTTBakedChar.Buffer bakedChars = null;
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                if (!STBTruetype.stbtt_InitFont(STBTTFontinfo.mallocStack(stack), fontData)) {
+                    throw new BagelError("Failed to load font `" + fontFile + "`");
+                }
 
-            int result;
-            if ((result = STBTruetype.stbtt_BakeFontBitmap(fontData, size, bitmap, width, height, FIRST_CHAR, chars)) <= 0) {
-                System.out.println("[Bagel] warning: font data not fully loaded: returned " + result);
-            }
+                bitmap = NativeMemory.alloc(NativeMemory.Kind.FONT, width * height);
+                bakedChars = STBTTBakedChar.malloc(NUM_CHARS);
+                NativeMemory.track(NativeMemory.Kind.FONT, (long) NUM_CHARS * STBTTBakedChar.SIZEOF);
 
-            // Convert single-channel to 3-channel plus alpha
-            ByteBuffer rgbaBitmap = BufferUtils.createByteBuffer(width * height * 4);
-            while (bitmap.hasRemaining()) {
-                byte next = bitmap.get();
-                // Threshold the colour, and use the actual value for the alpha
-                // (it looks better this way)
-                byte blackOrWhite = (byte) (next != Byte.MIN_VALUE ? 255 : Byte.MIN_VALUE);
-                rgbaBitmap.put(blackOrWhite);
-                rgbaBitmap.put(blackOrWhite);
-                rgbaBitmap.put(blackOrWhite);
-                rgbaBitmap.put(next);
-            }
-            rgbaBitmap.rewind();
+                int result;
+                if ((result = STBTruetype.stbtt_BakeFontBitmap(fontData, size, bitmap, width, height, FIRST_CHAR, bakedChars)) <= 0) {
+                    System.out.println("[Bagel] warning: font data not fully loaded: returned " + result);
+                }
 
-            tex = new Texture(width, height, rgbaBitmap);
+                // Convert single-channel to 3-channel plus alpha
+                rgbaBitmap = NativeMemory.alloc(NativeMemory.Kind.FONT, width * height * 4);
+                convertBitmap(bitmap, rgbaBitmap);
+                Baked baked = new Baked(width, height, rgbaBitmap, bakedChars);
+                rgbaBitmap = null;
+                bakedChars = null;
+                return baked;
+            } finally {
+                NativeMemory.free(NativeMemory.Kind.FONT, fontData);
+                if (bitmap != null) {
+                    NativeMemory.free(NativeMemory.Kind.FONT, bitmap);
+                }
+                if (rgbaBitmap != null) {
+                    NativeMemory.free(NativeMemory.Kind.FONT, rgbaBitmap);
+                }
+                if (bakedChars != null) {
+                    freeChars(bakedChars);
+                }
+            }
         } catch (IOException e) {
             throw new BagelError("Error loading font file `" + fontFile + "`: " + e.getClass().getName() + ": " + e.getMessage());
         }
     }
 
+    private static void convertBitmap(ByteBuffer bitmap, ByteBuffer rgbaBitmap) {
+        while (bitmap.hasRemaining()) {
+            byte next = bitmap.get();
+            // Threshold the colour, and use the actual value for the alpha
+            // (it looks better this way)
+            byte blackOrWhite = (byte) (next != Byte.MIN_VALUE ? 255 : Byte.MIN_VALUE);
+            rgbaBitmap.put(blackOrWhite);
+            rgbaBitmap.put(blackOrWhite);
+            rgbaBitmap.put(blackOrWhite);
+            rgbaBitmap.put(next);
+        }
+        rgbaBitmap.rewind();
+    }
+
+    private static void freeChars(STBTTBakedChar.Buffer chars) {
+        NativeMemory.untrack(NativeMemory.Kind.FONT, (long) NUM_CHARS * STBTTBakedChar.SIZEOF);
+        chars.free();
+    }
+
+    /**
+     * Free the font's texture and glyph metrics. It must not be used afterwards.
+     */
+    void destroy() {
+        tex.destroy();
+        freeChars(chars);
+    }
+
+    /**
+     * Returns the size of the baked texture in bytes.
+     */
+    long getTextureBytes() {
+        return (long) tex.w * tex.h * 4;
+    }
+
     // This is very inefficient but whatever.
     double getWidth(String string) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -122,6 +214,7 @@ class InternalFont {
     void drawString(String string, double x, double y, DrawOptions options) {
         x += tex.w / 2;
         y += tex.h / 2;
+        RenderQueue queue = Window.get().getRenderQueue();
         try (MemoryStack stack = MemoryStack.stackPush()) {
             FloatBuffer fx = stack.floats((float) x);
             FloatBuffer fy = stack.floats((float) y);
@@ -138,8 +231,9 @@ class InternalFont {
                     System.out.println("[Bagel] warning: asked to print character " + c + " that is not in the font");
                 } else {
                     STBTruetype.stbtt_GetBakedQuad(chars, tex.w, tex.h, c - FIRST_CHAR, fx, fy, quad, true);
-                    options.setSection(quad.s0() * tex.w, quad.t0() * tex.h, (quad.s1() - quad.s0()) * tex.w, (quad.t1() - quad.t0()) * tex.h);
-                    Window.get().submitRenderJob(options.toRenderInfo(tex, quad.x0(), quad.y0()));
+                    options.submitSection(queue, tex, quad.x0(), quad.y0(),
+                            quad.s0() * tex.w, quad.t0() * tex.h,
+                            (quad.s1() - quad.s0()) * tex.w, (quad.t1() - quad.t0()) * tex.h);
                 }
             }
         }
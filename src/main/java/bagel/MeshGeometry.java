@@ -0,0 +1,243 @@
+package bagel;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The graphics card's copy of a {@link TileMesh}: a vertex buffer of quads that is uploaded once and then drawn with a
+ * single draw call whenever the mesh's job comes up in the queue.
+ *
+ * Each mesh acts as the shader of its own jobs, so that jobs for different meshes can share the render queue with
+ * ordinary images. A mesh job uses the queue's columns as follows: (x, y) is where the mesh's origin goes, the scale
+ * and rotation are applied about that origin, the blend colour is applied as usual, and the section gives the part of
+ * the mesh to draw (left, top, right, bottom), in the mesh's own coordinates.
+ *
+ * Animated tiles are resolved in the vertex shader from a table of frames kept in a buffer texture, using a clock
+ * shared by every mesh that is read once per frame. Animations therefore never cause a mesh to be uploaded again, and
+ * every animation stays in step however often it is drawn.
+ *
+ * Tiles either come from sections of an ordinary texture, or from the layers of an array texture; each vertex carries a
+ * layer as well as a texture coordinate, and the fragment shader decides which to use.
+ */
+class MeshGeometry extends Shader {
+    /**
+     * The most quads a single mesh can hold; chosen so that every vertex can be addressed by a short index.
+     */
+    static final int MAX_QUADS = 4096;
+    // position (2), texture coordinate and layer (3), animation (1)
+    static final int FLOATS_PER_VERTEX = 6;
+    static final int VERTICES_PER_QUAD = 4;
+    // Each entry of the frame table is a vec4
+    static final int FLOATS_PER_FRAME_ENTRY = 4;
+    private static final long CLOCK_EPOCH = System.nanoTime();
+    private static int clockMillis = 0;
+
+    // Shared by every mesh, and created the first time one of each kind is drawn
+    private static Program flatProgram = null;
+    private static Program arrayProgram = null;
+    private static int indexVboId = 0;
+
+    private final boolean arrayTexture;
+    private int vaoId = 0;
+    private int vboId = 0;
+    private int quads = 0;
+    // The frame table, as a buffer and the texture that reads from it; 0 if no tile has been animated yet
+    private int framesVboId = 0;
+    private int framesTexId = 0;
+    // Contents waiting to be uploaded by the main thread, which may be replaced by another thread in the meantime
+    private final AtomicReference<Contents> pending = new AtomicReference<>();
+
+    private static class Program {
+        final int id;
+        final int translationUniformLocation;
+        final int scaleUniformLocation;
+        final int rotationUniformLocation;
+        final int blendUniformLocation;
+        final int clipUniformLocation;
+        final int timeUniformLocation;
+
+        Program(String fragmentShader) {
+            id = Shader.generateShaderProgram("mesh.vert", fragmentShader);
+            translationUniformLocation = GL20.glGetUniformLocation(id, "translation");
+            scaleUniformLocation = GL20.glGetUniformLocation(id, "scale");
+            rotationUniformLocation = GL20.glGetUniformLocation(id, "rotation");
+            blendUniformLocation = GL20.glGetUniformLocation(id, "blend");
+            clipUniformLocation = GL20.glGetUniformLocation(id, "clip");
+            timeUniformLocation = GL20.glGetUniformLocation(id, "time");
+            GL20.glUseProgram(id);
+            // Texture unit 0 is left for the tiles' texture, which the rest of the pipeline binds there
+            GL20.glUniform1i(GL20.glGetUniformLocation(id, "frames"), 1);
+            GL20.glUniform1f(GL20.glGetUniformLocation(id, "width"), Window.getWidth());
+            GL20.glUniform1f(GL20.glGetUniformLocation(id, "height"), Window.getHeight());
+        }
+    }
+
+    /**
+     * Create an empty mesh, whose tiles come from an array texture if arrayTexture is true.
+     */
+    MeshGeometry(boolean arrayTexture) {
+        this.arrayTexture = arrayTexture;
+    }
+
+    private static class Contents {
+        final float[] vertices;
+        final float[] frames;
+
+        Contents(float[] vertices, float[] frames) {
+            this.vertices = vertices;
+            this.frames = frames;
+        }
+    }
+
+    /**
+     * Replace the mesh's vertices and frame table the next time it is drawn. The arrays must not be modified
+     * afterwards.
+     */
+    void setContents(float[] vertices, float[] frames) {
+        pending.set(new Contents(vertices, frames));
+    }
+
+    /**
+     * Read the animation clock for the frame about to be drawn.
+     */
+    static void sampleClock() {
+        clockMillis = (int) ((System.nanoTime() - CLOCK_EPOCH) / 1_000_000);
+    }
+
+    private static void createIndexBuffer() {
+        // Every mesh uses the same pattern of indices, so one buffer can serve them all
+        ByteBuffer indexBytes = NativeMemory.alloc(NativeMemory.Kind.STAGING,
+                MAX_QUADS * QUAD_INDICES.length * Short.BYTES);
+        ShortBuffer indices = indexBytes.asShortBuffer();
+        for (int quad = 0; quad < MAX_QUADS; ++quad) {
+            for (byte index : QUAD_INDICES) {
+                indices.put((short) (quad * VERTICES_PER_QUAD + index));
+            }
+        }
+        indices.flip();
+        // Don't disturb the element buffer of whichever vertex array happens to be bound
+        GL30.glBindVertexArray(0);
+        indexVboId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+        NativeMemory.free(NativeMemory.Kind.STAGING, indexBytes);
+    }
+
+    @Override
+    protected void bindInternal() {
+        if (indexVboId == 0) {
+            createIndexBuffer();
+        }
+        GL20.glUseProgram(program().id);
+        GL30.glBindVertexArray(vaoId);
+    }
+
+    private Program program() {
+        if (arrayTexture) {
+            if (arrayProgram == null) {
+                arrayProgram = new Program("mesh_array.frag");
+            }
+            return arrayProgram;
+        } else {
+            if (flatProgram == null) {
+                flatProgram = new Program("mesh.frag");
+            }
+            return flatProgram;
+        }
+    }
+
+    @Override
+    void render(RenderQueue queue, int job) {
+        Contents contents = pending.getAndSet(null);
+        if (contents != null) {
+            upload(contents);
+        }
+        if (quads == 0) {
+            return;
+        }
+        if (framesTexId != 0) {
+            GL13.glActiveTexture(GL13.GL_TEXTURE1);
+            GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, framesTexId);
+            GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        }
+
+        Program program = program();
+        GL20.glUniform2f(program.translationUniformLocation, queue.x(job), queue.y(job));
+        GL20.glUniform2f(program.scaleUniformLocation, queue.xScale(job), queue.yScale(job));
+        GL20.glUniform1f(program.rotationUniformLocation, queue.rotation(job));
+        GL20.glUniform4f(program.blendUniformLocation,
+                queue.rBlend(job), queue.gBlend(job), queue.bBlend(job), queue.aBlend(job));
+        GL20.glUniform4f(program.clipUniformLocation,
+                queue.xOffset(job), queue.yOffset(job), queue.xMax(job), queue.yMax(job));
+        GL30.glUniform1ui(program.timeUniformLocation, clockMillis);
+        GL11.glDrawElements(GL11.GL_TRIANGLES, quads * QUAD_INDICES.length, GL11.GL_UNSIGNED_SHORT, 0);
+        RenderStats.countDrawCall();
+    }
+
+    private void upload(Contents contents) {
+        if (vaoId == 0) {
+            vaoId = GL30.glGenVertexArrays();
+            GL30.glBindVertexArray(vaoId);
+            vboId = GL15.glGenBuffers();
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+            int stride = FLOATS_PER_VERTEX * Float.BYTES;
+            GL20.glVertexAttribPointer(0, 2, GL11.GL_FLOAT, false, stride, 0);
+            GL20.glEnableVertexAttribArray(0);
+            GL20.glVertexAttribPointer(1, 3, GL11.GL_FLOAT, false, stride, 2 * Float.BYTES);
+            GL20.glEnableVertexAttribArray(1);
+            GL20.glVertexAttribPointer(2, 1, GL11.GL_FLOAT, false, stride, 5 * Float.BYTES);
+            GL20.glEnableVertexAttribArray(2);
+            GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, indexVboId);
+        } else {
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+        }
+        // The mesh only changes occasionally, so the old contents can simply be replaced
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, contents.vertices, GL15.GL_STATIC_DRAW);
+        quads = contents.vertices.length / (FLOATS_PER_VERTEX * VERTICES_PER_QUAD);
+
+        if (contents.frames.length > 0) {
+            if (framesVboId == 0) {
+                framesVboId = GL15.glGenBuffers();
+                framesTexId = GL11.glGenTextures();
+            }
+            GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, framesVboId);
+            GL15.glBufferData(GL31.GL_TEXTURE_BUFFER, contents.frames, GL15.GL_STATIC_DRAW);
+            GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+            GL13.glActiveTexture(GL13.GL_TEXTURE1);
+            GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, framesTexId);
+            GL31.glTexBuffer(GL31.GL_TEXTURE_BUFFER, GL30.GL_RGBA32F, framesVboId);
+            GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        }
+
+        // Leave the GL state as the other shaders expect to find it
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Release the mesh's buffers. It must not be drawn afterwards.
+     */
+    void destroy() {
+        Window.runOnMainThread(() -> {
+            if (vaoId != 0) {
+                GL30.glDeleteVertexArrays(vaoId);
+                GL15.glDeleteBuffers(vboId);
+                vaoId = 0;
+                quads = 0;
+            }
+            if (framesVboId != 0) {
+                GL11.glDeleteTextures(framesTexId);
+                GL15.glDeleteBuffers(framesVboId);
+                framesVboId = 0;
+                framesTexId = 0;
+            }
+        });
+    }
+}
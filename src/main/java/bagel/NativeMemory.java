@@ -0,0 +1,128 @@
+package bagel;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps count of the memory bagel allocates outside the Java heap, which the garbage collector neither sees nor frees.
+ *
+ * Every such buffer is counted from when it is allocated until it is freed, so totals that keep growing point to a
+ * leak. Buffers handed back to the game, such as the result of {@link Window#readPixels()}, belong to the heap and are
+ * not counted. The totals are published through {@link BagelStatsMXBean}.
+ */
+class NativeMemory {
+    /**
+     * What a buffer is used for.
+     */
+    enum Kind {
+        /** Pixels decoded from an image file, until they are on the graphics card. */
+        IMAGE_DECODE,
+        /** Font files, glyph bitmaps and the glyph metrics kept for each font. */
+        FONT,
+        /** Data on its way to the graphics card, such as index and vertex buffers. */
+        STAGING,
+        /** The render queues' columns. */
+        RENDER_QUEUE
+    }
+
+    private static final AtomicLongArray bytes = new AtomicLongArray(Kind.values().length);
+    private static final AtomicLongArray buffers = new AtomicLongArray(Kind.values().length);
+
+    /**
+     * Seal the class.
+     */
+    private NativeMemory() {}
+
+    /**
+     * Count a buffer that was allocated elsewhere, such as by stb.
+     */
+    static void track(Kind kind, long size) {
+        bytes.addAndGet(kind.ordinal(), size);
+        buffers.incrementAndGet(kind.ordinal());
+    }
+
+    /**
+     * Stop counting a buffer that is about to be freed.
+     */
+    static void untrack(Kind kind, long size) {
+        bytes.addAndGet(kind.ordinal(), -size);
+        buffers.decrementAndGet(kind.ordinal());
+    }
+
+    /**
+     * Count a buffer whose size has changed from oldSize to newSize.
+     */
+    static void resized(Kind kind, long oldSize, long newSize) {
+        bytes.addAndGet(kind.ordinal(), newSize - oldSize);
+    }
+
+    /**
+     * Allocate a buffer of the given size, which must be given back to {@link #free}.
+     */
+    static ByteBuffer alloc(Kind kind, int size) {
+        ByteBuffer buffer = MemoryUtil.memAlloc(size);
+        track(kind, size);
+        return buffer;
+    }
+
+    static void free(Kind kind, ByteBuffer buffer) {
+        untrack(kind, buffer.capacity());
+        MemoryUtil.memFree(buffer);
+    }
+
+    /**
+     * Count pixels returned by stbi_load; a null result is ignored.
+     */
+    static ByteBuffer trackImage(ByteBuffer pixels) {
+        if (pixels != null) {
+            track(Kind.IMAGE_DECODE, pixels.capacity());
+        }
+        return pixels;
+    }
+
+    /**
+     * Free pixels counted by {@link #trackImage}.
+     */
+    static void freeImage(ByteBuffer pixels) {
+        untrack(Kind.IMAGE_DECODE, pixels.capacity());
+        STBImage.stbi_image_free(pixels);
+    }
+
+    /**
+     * Returns the total size of the buffers currently allocated, in bytes.
+     */
+    static long getBytes() {
+        long total = 0;
+        for (int i = 0; i < bytes.length(); ++i) {
+            total += bytes.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of buffers currently allocated.
+     */
+    static long getBuffers() {
+        long total = 0;
+        for (int i = 0; i < buffers.length(); ++i) {
+            total += buffers.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the bytes currently allocated for each kind of buffer, keyed by the kind's name in lower case.
+     */
+    static Map<String, Long> getBytesByKind() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Kind kind : Kind.values()) {
+            result.put(kind.name().toLowerCase(), bytes.get(kind.ordinal()));
+        }
+        return result;
+    }
+}
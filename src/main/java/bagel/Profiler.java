@@ -0,0 +1,194 @@
+package bagel;
+
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long each part of a frame takes, and can show the results on screen.
+ *
+ * Once enabled, every frame records the time spent in the game's update, submitting the frame's drawing to the
+ * graphics card, waiting for the buffer swap, and executing the drawing on the graphics card itself. The last
+ * {@value #WINDOW} frames are kept so that percentiles can be reported. Graphics card times are read back a few frames
+ * late so that the CPU never waits for them.
+ *
+ * Counts of draw calls, binds and jobs are always available from {@link RenderStats}.
+ */
+public class Profiler {
+    /**
+     * The parts of a frame that are timed.
+     */
+    public enum Timing {
+        /** Running the game's update. */
+        UPDATE,
+        /** Sending the frame's drawing to the graphics card. */
+        SUBMIT,
+        /** Swapping buffers, which includes waiting for vsync. */
+        SWAP,
+        /** Executing the frame's drawing on the graphics card. */
+        GPU
+    }
+
+    private static final int WINDOW = 240;
+    // Enough queries in flight that one has always finished by the time it comes around again
+    private static final int QUERIES = 4;
+
+    private static boolean enabled = false;
+    private static Font overlayFont = null;
+
+    private static final float[][] samples = new float[Timing.values().length][WINDOW];
+    private static final int[] sampleCount = new int[Timing.values().length];
+    private static final int[] nextSample = new int[Timing.values().length];
+    private static final float[] sorted = new float[WINDOW];
+
+    private static int[] queries = null;
+    private static final boolean[] queryPending = new boolean[QUERIES];
+    private static int currentQuery = 0;
+    private static boolean queryActive = false;
+
+    /**
+     * Seal the class.
+     */
+    private Profiler() {}
+
+    /**
+     * Turn timing on or off. Disabled by default; turning it off forgets all the samples so far.
+     */
+    public static synchronized void setEnabled(boolean enabled) {
+        Profiler.enabled = enabled;
+        if (!enabled) {
+            Arrays.fill(sampleCount, 0);
+            Arrays.fill(nextSample, 0);
+            overlayFont = null;
+        }
+    }
+
+    /**
+     * Returns whether timing is turned on.
+     */
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable timing and show the results in the top-left corner of the window every frame, drawn with the given font.
+     */
+    public static synchronized void showOverlay(Font font) {
+        setEnabled(true);
+        overlayFont = font;
+    }
+
+    /**
+     * Stop showing the results on screen. Timing stays enabled.
+     */
+    public static synchronized void hideOverlay() {
+        overlayFont = null;
+    }
+
+    /**
+     * Returns the most recent time recorded for part of a frame, in milliseconds, or 0 if there is none yet.
+     */
+    public static synchronized double getLast(Timing timing) {
+        int i = timing.ordinal();
+        return sampleCount[i] == 0 ? 0 : samples[i][(nextSample[i] + WINDOW - 1) % WINDOW];
+    }
+
+    /**
+     * Returns the given percentile (from 0 to 100) of the recent times recorded for part of a frame, in milliseconds,
+     * or 0 if there are none yet. For example, the 99th percentile is the time that 99% of recent frames were at least
+     * as fast as.
+     */
+    public static synchronized double getPercentile(Timing timing, double percentile) {
+        int i = timing.ordinal();
+        int count = sampleCount[i];
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples[i], 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, rank))];
+    }
+
+    /**
+     * Record a time for part of the current frame, given in nanoseconds.
+     */
+    static synchronized void record(Timing timing, long nanos) {
+        if (!enabled) {
+            return;
+        }
+        int i = timing.ordinal();
+        samples[i][nextSample[i]] = nanos / 1e6f;
+        nextSample[i] = (nextSample[i] + 1) % WINDOW;
+        sampleCount[i] = Math.min(sampleCount[i] + 1, WINDOW);
+    }
+
+    /**
+     * Start timing the frame's drawing on the graphics card. Must be called on the main thread.
+     */
+    static void beginGpuTiming() {
+        if (!isEnabled()) {
+            return;
+        }
+        if (queries == null) {
+            queries = new int[QUERIES];
+            for (int i = 0; i < QUERIES; ++i) {
+                queries[i] = GL15.glGenQueries();
+            }
+        }
+        currentQuery = (currentQuery + 1) % QUERIES;
+        int query = queries[currentQuery];
+        if (queryPending[currentQuery]) {
+            // This query was issued a few frames ago; if its result still isn't ready, skip timing this frame
+            if (GL15.glGetQueryObjecti(query, GL15.GL_QUERY_RESULT_AVAILABLE) == 0) {
+                return;
+            }
+            record(Timing.GPU, GL33.glGetQueryObjectui64(query, GL15.GL_QUERY_RESULT));
+            queryPending[currentQuery] = false;
+        }
+        GL15.glBeginQuery(GL33.GL_TIME_ELAPSED, query);
+        queryActive = true;
+    }
+
+    /**
+     * Stop timing the frame's drawing on the graphics card.
+     */
+    static void endGpuTiming() {
+        if (queryActive) {
+            GL15.glEndQuery(GL33.GL_TIME_ELAPSED);
+            queryPending[currentQuery] = true;
+            queryActive = false;
+        }
+    }
+
+    /**
+     * Draw the overlay, if it is showing, on top of everything else drawn from the calling thread this frame.
+     */
+    static void drawOverlay() {
+        Font font;
+        String text;
+        synchronized (Profiler.class) {
+            font = overlayFont;
+            if (font == null) {
+                return;
+            }
+            StringBuilder builder = new StringBuilder("ms        p50     p95     p99\n");
+            for (Timing timing : Timing.values()) {
+                builder.append(String.format("%-7s %7.2f %7.2f %7.2f\n", timing.name().toLowerCase(),
+                        getPercentile(timing, 50), getPercentile(timing, 95), getPercentile(timing, 99)));
+            }
+            text = builder.append(String.format("draw calls %d, texture binds %d, shader binds %d, jobs %d\n",
+                    RenderStats.getDrawCalls(), RenderStats.getTextureBinds(), RenderStats.getShaderBinds(),
+                    RenderStats.getJobs()))
+                    .append(String.format("fence waits %d", RenderStats.getFenceWaits()))
+                    .toString();
+        }
+
+        RenderQueue queue = Window.get().getRenderQueue();
+        int layer = queue.getLayer();
+        queue.setLayer(Integer.MAX_VALUE);
+        font.drawString(text, 8, 8);
+        queue.setLayer(layer);
+    }
+}
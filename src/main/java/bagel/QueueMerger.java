@@ -0,0 +1,150 @@
+package bagel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gives every thread other than the main one a render queue of its own to draw into, and merges them all into the
+ * main queue at the end of the frame.
+ *
+ * The merged queue is in layer order, lowest layer first. Within a layer, jobs are in the order they were submitted,
+ * whichever thread submitted them: every queue stamps its jobs from one shared counter. Work split across threads
+ * that must look the same every frame should still either submit in a fixed order or give each thread its own layer,
+ * since threads running at the same time submit in whatever order they happen to run.
+ *
+ * Threads come and go, as in a thread pool, so the queue of a thread that has finished is freed at the next merge.
+ */
+class QueueMerger {
+    private static class ThreadQueue {
+        final Thread owner;
+        final RenderQueue queue;
+
+        ThreadQueue(Thread owner, RenderQueue queue) {
+            this.owner = owner;
+            this.queue = queue;
+        }
+    }
+
+    private final RenderQueue main;
+    private final AtomicInteger sequencer = new AtomicInteger();
+    private final List<ThreadQueue> threadQueues = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<RenderQueue> threadQueue = ThreadLocal.withInitial(() -> {
+        RenderQueue queue = new RenderQueue();
+        queue.setSequencer(sequencer);
+        threadQueues.add(new ThreadQueue(Thread.currentThread(), queue));
+        return queue;
+    });
+
+    // Sort keys: the job's layer in the high half, and its sequence number in the low half
+    private long[] keys = new long[0];
+    // For each sequence number, the queue the job is in and its position there
+    private RenderQueue[] sources = new RenderQueue[0];
+    private int[] positions = new int[0];
+    private final RenderQueue merged = new RenderQueue();
+
+    /**
+     * Merge other threads' jobs into the given queue, which the main thread draws into.
+     */
+    QueueMerger(RenderQueue main) {
+        this.main = main;
+        main.setSequencer(sequencer);
+    }
+
+    /**
+     * Returns the render queue belonging to the calling thread, which must not be the main thread.
+     */
+    RenderQueue queueForCurrentThread() {
+        return threadQueue.get();
+    }
+
+    /**
+     * Move every thread's jobs into the main queue, in layer order. All drawing from other threads must have finished.
+     */
+    void merge() {
+        int count = main.size();
+        boolean othersHaveJobs = false;
+        for (ThreadQueue thread : threadQueues) {
+            count += thread.queue.size();
+            othersHaveJobs |= thread.queue.size() > 0;
+        }
+        if (othersHaveJobs || !main.isInLayerOrder()) {
+            sort(count);
+        }
+        // Numbers only need to be unique within a frame, so they never run out
+        sequencer.set(0);
+        freeFinishedThreads();
+    }
+
+    private void sort(int count) {
+        // Sequence numbers start again every frame, so they are below the number of jobs stamped this frame
+        int sequences = sequencer.get();
+        if (keys.length < count) {
+            keys = new long[Math.max(count, keys.length * 2)];
+        }
+        if (sources.length < sequences) {
+            int size = Math.max(sequences, sources.length * 2);
+            sources = new RenderQueue[size];
+            positions = new int[size];
+        }
+        int index = addKeys(main, 0);
+        for (ThreadQueue thread : threadQueues) {
+            index = addKeys(thread.queue, index);
+        }
+        Arrays.sort(keys, 0, count);
+
+        for (int i = 0; i < count; ++i) {
+            int sequence = (int) keys[i];
+            sources[sequence].copyTo(positions[sequence], merged);
+        }
+
+        main.swap(merged);
+        merged.clear();
+        for (ThreadQueue thread : threadQueues) {
+            thread.queue.clear();
+        }
+        Arrays.fill(sources, 0, sequences, null);
+    }
+
+    private int addKeys(RenderQueue queue, int index) {
+        for (int job = 0; job < queue.size(); ++job) {
+            int sequence = queue.sequence(job);
+            sources[sequence] = queue;
+            positions[sequence] = job;
+            // Sequence numbers are never negative, so the keys compare exactly as (layer, sequence) pairs would
+            keys[index] = ((long) queue.layer(job) << 32) | sequence;
+            ++index;
+        }
+        return index;
+    }
+
+    private void freeFinishedThreads() {
+        List<ThreadQueue> finished = null;
+        for (ThreadQueue thread : threadQueues) {
+            if (!thread.owner.isAlive()) {
+                if (finished == null) {
+                    finished = new ArrayList<>();
+                }
+                finished.add(thread);
+            }
+        }
+        if (finished != null) {
+            threadQueues.removeAll(finished);
+            for (ThreadQueue thread : finished) {
+                thread.queue.free();
+            }
+        }
+    }
+
+    /**
+     * Release the off-heap storage of every thread's queue.
+     */
+    void free() {
+        merged.free();
+        for (ThreadQueue thread : threadQueues) {
+            thread.queue.free();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package bagel;
+
+import java.util.Arrays;
+
+/**
+ * Reorders a frame's render queue so that jobs sharing a shader and texture sit next to each other, without changing
+ * what ends up on screen.
+ *
+ * Jobs are grouped greedily: each job joins the most recent earlier group with the same shader and texture, as long as
+ * it does not overlap anything drawn in the groups it would jump ahead of. Jobs that use a custom shader never move,
+ * and nothing moves past them.
+ */
+class QueueReorderer {
+    // How many groups back a job may look for one it can join; bounds the cost of the pass
+    private static final int LOOKBACK = 64;
+
+    // Per job: its group, and its screen-space bounds
+    private int[] jobGroup = new int[0];
+    private float[] jobBounds = new float[0];
+
+    // Per group: its shader and texture, and the union of its jobs' bounds
+    private Shader[] groupShader = new Shader[0];
+    private Texture[] groupTexture = new Texture[0];
+    private float[] groupBounds = new float[0];
+    private int[] groupStart = new int[0];
+    private int[] order = new int[0];
+
+    private final RenderQueue sorted = new RenderQueue();
+
+    /**
+     * Reorder the queue in place.
+     */
+    void reorder(RenderQueue queue) {
+        int count = queue.size();
+        ensureCapacity(count);
+        Shader defaultShader = DefaultShader.get();
+
+        int groups = 0;
+        for (int job = 0; job < count; ++job) {
+            Shader shader = queue.shader(job);
+            Texture tex = queue.texture(job);
+            computeBounds(queue, job, jobBounds, job * 4);
+            boolean movable = shader == defaultShader;
+
+            int target = -1;
+            for (int group = groups - 1; movable && group >= Math.max(0, groups - LOOKBACK); --group) {
+                if (groupShader[group] == shader && groupTexture[group].equals(tex)) {
+                    target = group;
+                    break;
+                }
+                if (groupShader[group] != defaultShader || overlaps(groupBounds, group * 4, jobBounds, job * 4)) {
+                    break;
+                }
+            }
+
+            if (target < 0 || !movable) {
+                target = groups++;
+                groupShader[target] = shader;
+                groupTexture[target] = tex;
+                System.arraycopy(jobBounds, job * 4, groupBounds, target * 4, 4);
+                groupStart[target] = 0;
+            } else {
+                int b = target * 4;
+                int j = job * 4;
+                groupBounds[b] = Math.min(groupBounds[b], jobBounds[j]);
+                groupBounds[b + 1] = Math.min(groupBounds[b + 1], jobBounds[j + 1]);
+                groupBounds[b + 2] = Math.max(groupBounds[b + 2], jobBounds[j + 2]);
+                groupBounds[b + 3] = Math.max(groupBounds[b + 3], jobBounds[j + 3]);
+            }
+            jobGroup[job] = target;
+            // Count the jobs in each group for now; this becomes the group's starting index below
+            ++groupStart[target];
+        }
+
+        // Lay the groups out one after another, keeping each group's jobs in submission order
+        int start = 0;
+        for (int group = 0; group < groups; ++group) {
+            int size = groupStart[group];
+            groupStart[group] = start;
+            start += size;
+        }
+        for (int job = 0; job < count; ++job) {
+            order[groupStart[jobGroup[job]]++] = job;
+        }
+        for (int i = 0; i < count; ++i) {
+            queue.copyTo(order[i], sorted);
+        }
+        queue.swap(sorted);
+        sorted.clear();
+
+        // Don't keep textures and shaders alive through the arrays
+        Arrays.fill(groupShader, 0, groups, null);
+        Arrays.fill(groupTexture, 0, groups, null);
+    }
+
+    /**
+     * Returns how many texture and shader binds drawing the queue in its current order would take.
+     */
+    static int countBinds(RenderQueue queue) {
+        int binds = 0;
+        Texture lastTexture = null;
+        Shader lastShader = null;
+        for (int job = 0; job < queue.size(); ++job) {
+            if (!queue.texture(job).equals(lastTexture)) {
+                ++binds;
+                lastTexture = queue.texture(job);
+            }
+            if (queue.shader(job) != lastShader) {
+                ++binds;
+                lastShader = queue.shader(job);
+            }
+        }
+        return binds;
+    }
+
+    /**
+     * Store the screen-space bounding box of the job as {left, top, right, bottom}, using the same transformation as
+     * the shaders.
+     */
+    private static void computeBounds(RenderQueue queue, int job, float[] out, int offset) {
+        Texture tex = queue.texture(job);
+        float xScale = tex.w * queue.xScale(job);
+        float yScale = tex.h * queue.yScale(job);
+        float cos = (float) Math.cos(queue.rotation(job));
+        float sin = (float) Math.sin(queue.rotation(job));
+        float left = Float.POSITIVE_INFINITY;
+        float top = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY;
+        float bottom = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 4; ++corner) {
+            float x = ((corner & 1) == 0 ? queue.xOffset(job) : queue.xMax(job)) - 0.5f;
+            float y = ((corner & 2) == 0 ? queue.yOffset(job) : queue.yMax(job)) - 0.5f;
+            float screenX = queue.x(job) + cos * x * xScale - sin * y * yScale;
+            float screenY = queue.y(job) + sin * x * xScale + cos * y * yScale;
+            left = Math.min(left, screenX);
+            top = Math.min(top, screenY);
+            right = Math.max(right, screenX);
+            bottom = Math.max(bottom, screenY);
+        }
+        out[offset] = left;
+        out[offset + 1] = top;
+        out[offset + 2] = right;
+        out[offset + 3] = bottom;
+    }
+
+    /**
+     * Returns whether two bounding boxes overlap. Boxes that only share an edge (like neighbouring tiles) do not.
+     */
+    private static boolean overlaps(float[] a, int i, float[] b, int j) {
+        return a[i] < b[j + 2] && a[i + 2] > b[j] && a[i + 1] < b[j + 3] && a[i + 3] > b[j + 1];
+    }
+
+    /**
+     * Release the off-heap storage used while reordering.
+     */
+    void free() {
+        sorted.free();
+    }
+
+    private void ensureCapacity(int count) {
+        if (jobGroup.length < count) {
+            int capacity = Math.max(count, jobGroup.length * 2);
+            jobGroup = new int[capacity];
+            jobBounds = new float[capacity * 4];
+            groupShader = new Shader[capacity];
+            groupTexture = new Texture[capacity];
+            groupBounds = new float[capacity * 4];
+            groupStart = new int[capacity];
+            order = new int[capacity];
+        }
+    }
+}
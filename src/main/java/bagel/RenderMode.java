@@ -0,0 +1,39 @@
+package bagel;
+
+/**
+ * The strategies available for sending the frame's drawing to the graphics card.
+ *
+ * @see Window#setRenderMode(RenderMode)
+ */
+public enum RenderMode {
+    /**
+     * Each image is drawn with its own draw call. This is the slowest mode, but the simplest.
+     */
+    IMMEDIATE {
+        @Override
+        Renderer createRenderer() {
+            return new ImmediateRenderer();
+        }
+    },
+    /**
+     * Consecutive images that share a texture are drawn together with a single draw call. This is the default.
+     */
+    BATCHED {
+        @Override
+        Renderer createRenderer() {
+            return new BatchRenderer(new BatchShader());
+        }
+    },
+    /**
+     * Consecutive images that share a texture are drawn together with a single instanced draw call. Each image costs
+     * one small record of instance data rather than four full vertices.
+     */
+    INSTANCED {
+        @Override
+        Renderer createRenderer() {
+            return new BatchRenderer(new InstancedShader());
+        }
+    };
+
+    abstract Renderer createRenderer();
+}
@@ -0,0 +1,311 @@
+package bagel;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The queue of rendering jobs for a frame.
+ *
+ * Jobs are stored as columns of primitives in off-heap buffers that are allocated once and reused every frame, so
+ * submitting a job does not allocate anything on the Java heap once the queue has grown to fit a typical frame.
+ *
+ * Each job also records the layer it was drawn on; see {@link Window#setDrawLayer(int)}. Queues that are merged
+ * together share a sequence counter, and each job records its place in that sequence, so the merge can keep jobs in
+ * the order they were submitted whichever thread submitted them.
+ */
+class RenderQueue {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int X_OFFSET = 2;
+    private static final int Y_OFFSET = 3;
+    private static final int X_MAX = 4;
+    private static final int Y_MAX = 5;
+    private static final int X_SCALE = 6;
+    private static final int Y_SCALE = 7;
+    private static final int ROTATION = 8;
+    private static final int R_BLEND = 9;
+    private static final int G_BLEND = 10;
+    private static final int B_BLEND = 11;
+    private static final int A_BLEND = 12;
+    private static final int COLUMNS = 13;
+
+    private FloatBuffer[] columns = new FloatBuffer[COLUMNS];
+    private IntBuffer layers;
+    private IntBuffer sequences;
+    // References can't live off-heap, but storing them into an existing array doesn't allocate either
+    private Texture[] textures = new Texture[INITIAL_CAPACITY];
+    private Shader[] shaders = new Shader[INITIAL_CAPACITY];
+    private int capacity = INITIAL_CAPACITY;
+    private int size = 0;
+    // Whether every job so far was added on the same layer as, or a higher layer than, the job before it
+    private boolean inLayerOrder = true;
+    // The layer new jobs are added on. Not part of the queue's contents, so it is kept by clear() and swap()
+    private int currentLayer = 0;
+    // Shared with the queues this one is merged with, or null if it isn't merged. Also kept by clear() and swap()
+    private AtomicInteger sequencer = null;
+
+    RenderQueue() {
+        for (int i = 0; i < COLUMNS; ++i) {
+            columns[i] = MemoryUtil.memAllocFloat(capacity);
+        }
+        layers = MemoryUtil.memAllocInt(capacity);
+        sequences = MemoryUtil.memAllocInt(capacity);
+        NativeMemory.track(NativeMemory.Kind.RENDER_QUEUE, nativeBytes(capacity));
+    }
+
+    private static long nativeBytes(int capacity) {
+        return (long) capacity * (COLUMNS * Float.BYTES + 2 * Integer.BYTES);
+    }
+
+    /**
+     * Stamp jobs added from now on with numbers from the given counter.
+     */
+    void setSequencer(AtomicInteger sequencer) {
+        this.sequencer = sequencer;
+    }
+
+    /**
+     * Set the layer that jobs added from now on are drawn on.
+     */
+    void setLayer(int layer) {
+        currentLayer = layer;
+    }
+
+    int getLayer() {
+        return currentLayer;
+    }
+
+    /**
+     * Add a job to the end of the queue.
+     *
+     * (x, y) is where the centre of the whole texture goes; the section (xOffset, yOffset) to (xMax, yMax) is given in
+     * texture coordinates, from 0 to 1.
+     */
+    void add(Texture tex, Shader shader,
+             float x, float y,
+             float xOffset, float yOffset, float xMax, float yMax,
+             float xScale, float yScale,
+             float rotation,
+             float rBlend, float gBlend, float bBlend, float aBlend) {
+        add(currentLayer, tex, shader, x, y, xOffset, yOffset, xMax, yMax, xScale, yScale, rotation,
+                rBlend, gBlend, bBlend, aBlend);
+    }
+
+    private void add(int layer, Texture tex, Shader shader,
+                     float x, float y,
+                     float xOffset, float yOffset, float xMax, float yMax,
+                     float xScale, float yScale,
+                     float rotation,
+                     float rBlend, float gBlend, float bBlend, float aBlend) {
+        if (size == capacity) {
+            grow();
+        }
+        if (size > 0 && layer < layers.get(size - 1)) {
+            inLayerOrder = false;
+        }
+        int job = size++;
+        layers.put(job, layer);
+        sequences.put(job, sequencer != null ? sequencer.getAndIncrement() : 0);
+        textures[job] = tex;
+        shaders[job] = shader;
+        columns[X].put(job, x);
+        columns[Y].put(job, y);
+        columns[X_OFFSET].put(job, xOffset);
+        columns[Y_OFFSET].put(job, yOffset);
+        columns[X_MAX].put(job, xMax);
+        columns[Y_MAX].put(job, yMax);
+        columns[X_SCALE].put(job, xScale);
+        columns[Y_SCALE].put(job, yScale);
+        columns[ROTATION].put(job, rotation);
+        columns[R_BLEND].put(job, rBlend);
+        columns[G_BLEND].put(job, gBlend);
+        columns[B_BLEND].put(job, bBlend);
+        columns[A_BLEND].put(job, aBlend);
+    }
+
+    /**
+     * Copy a job from this queue to the end of another one, keeping its layer. It gets a new place in the other queue's
+     * sequence, if it has one.
+     */
+    void copyTo(int job, RenderQueue dest) {
+        dest.add(layers.get(job), textures[job], shaders[job],
+                x(job), y(job),
+                xOffset(job), yOffset(job), xMax(job), yMax(job),
+                xScale(job), yScale(job),
+                rotation(job),
+                rBlend(job), gBlend(job), bBlend(job), aBlend(job));
+    }
+
+    /**
+     * Exchange the contents of this queue with another one.
+     */
+    void swap(RenderQueue other) {
+        FloatBuffer[] columns = this.columns;
+        IntBuffer layers = this.layers;
+        IntBuffer sequences = this.sequences;
+        Texture[] textures = this.textures;
+        Shader[] shaders = this.shaders;
+        int capacity = this.capacity;
+        int size = this.size;
+        boolean inLayerOrder = this.inLayerOrder;
+        this.columns = other.columns;
+        this.layers = other.layers;
+        this.sequences = other.sequences;
+        this.textures = other.textures;
+        this.shaders = other.shaders;
+        this.capacity = other.capacity;
+        this.size = other.size;
+        this.inLayerOrder = other.inLayerOrder;
+        other.columns = columns;
+        other.layers = layers;
+        other.sequences = sequences;
+        other.textures = textures;
+        other.shaders = shaders;
+        other.capacity = capacity;
+        other.size = size;
+        other.inLayerOrder = inLayerOrder;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Move every job by (dx, dy).
+     */
+    void translate(float dx, float dy) {
+        for (int job = 0; job < size; ++job) {
+            columns[X].put(job, columns[X].get(job) + dx);
+            columns[Y].put(job, columns[Y].get(job) + dy);
+        }
+    }
+
+    /**
+     * Mirror every job top to bottom within a region of the given height, so that y becomes height - y. The winding of
+     * every quad is reversed as a result.
+     */
+    void flipVertically(float height) {
+        for (int job = 0; job < size; ++job) {
+            columns[Y].put(job, height - columns[Y].get(job));
+            columns[Y_SCALE].put(job, -columns[Y_SCALE].get(job));
+            columns[ROTATION].put(job, -columns[ROTATION].get(job));
+        }
+    }
+
+    /**
+     * Returns true if no job was added on a lower layer than the job before it, so the queue is already in layer
+     * order.
+     */
+    boolean isInLayerOrder() {
+        return inLayerOrder;
+    }
+
+    /**
+     * Empty the queue, keeping its storage for the next frame.
+     */
+    void clear() {
+        // Don't keep textures and shaders alive longer than necessary
+        Arrays.fill(textures, 0, size, null);
+        Arrays.fill(shaders, 0, size, null);
+        size = 0;
+        inLayerOrder = true;
+    }
+
+    /**
+     * Release the off-heap storage. The queue must not be used afterwards.
+     */
+    void free() {
+        for (FloatBuffer column : columns) {
+            MemoryUtil.memFree(column);
+        }
+        MemoryUtil.memFree(layers);
+        MemoryUtil.memFree(sequences);
+        NativeMemory.untrack(NativeMemory.Kind.RENDER_QUEUE, nativeBytes(capacity));
+    }
+
+    private void grow() {
+        NativeMemory.resized(NativeMemory.Kind.RENDER_QUEUE, nativeBytes(capacity), nativeBytes(capacity * 2));
+        capacity *= 2;
+        for (int i = 0; i < COLUMNS; ++i) {
+            columns[i] = MemoryUtil.memRealloc(columns[i], capacity);
+        }
+        layers = MemoryUtil.memRealloc(layers, capacity);
+        sequences = MemoryUtil.memRealloc(sequences, capacity);
+        textures = Arrays.copyOf(textures, capacity);
+        shaders = Arrays.copyOf(shaders, capacity);
+    }
+
+    int layer(int job) {
+        return layers.get(job);
+    }
+
+    int sequence(int job) {
+        return sequences.get(job);
+    }
+
+    Texture texture(int job) {
+        return textures[job];
+    }
+
+    Shader shader(int job) {
+        return shaders[job];
+    }
+
+    float x(int job) {
+        return columns[X].get(job);
+    }
+
+    float y(int job) {
+        return columns[Y].get(job);
+    }
+
+    float xOffset(int job) {
+        return columns[X_OFFSET].get(job);
+    }
+
+    float yOffset(int job) {
+        return columns[Y_OFFSET].get(job);
+    }
+
+    float xMax(int job) {
+        return columns[X_MAX].get(job);
+    }
+
+    float yMax(int job) {
+        return columns[Y_MAX].get(job);
+    }
+
+    float xScale(int job) {
+        return columns[X_SCALE].get(job);
+    }
+
+    float yScale(int job) {
+        return columns[Y_SCALE].get(job);
+    }
+
+    float rotation(int job) {
+        return columns[ROTATION].get(job);
+    }
+
+    float rBlend(int job) {
+        return columns[R_BLEND].get(job);
+    }
+
+    float gBlend(int job) {
+        return columns[G_BLEND].get(job);
+    }
+
+    float bBlend(int job) {
+        return columns[B_BLEND].get(job);
+    }
+
+    float aBlend(int job) {
+        return columns[A_BLEND].get(job);
+    }
+}
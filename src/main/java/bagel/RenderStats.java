@@ -0,0 +1,146 @@
+package bagel;
+
+/**
+ * Statistics about the rendering work done in the most recently completed frame. They are counted on the main thread,
+ * and can be read from any thread.
+ */
+public class RenderStats {
+    /**
+     * The counts for one frame, published all at once so that other threads never see a frame half-counted.
+     */
+    private static class Frame {
+        final int drawCalls;
+        final int textureBinds;
+        final int shaderBinds;
+        final int jobs;
+        final int bindsBeforeReordering;
+        final int bindsAfterReordering;
+        final int fenceWaits;
+
+        Frame(int drawCalls, int textureBinds, int shaderBinds, int jobs, int bindsBeforeReordering,
+              int bindsAfterReordering, int fenceWaits) {
+            this.drawCalls = drawCalls;
+            this.textureBinds = textureBinds;
+            this.shaderBinds = shaderBinds;
+            this.jobs = jobs;
+            this.bindsBeforeReordering = bindsBeforeReordering;
+            this.bindsAfterReordering = bindsAfterReordering;
+            this.fenceWaits = fenceWaits;
+        }
+    }
+
+    // Counted by the main thread as the frame is drawn
+    private static int drawCalls = 0;
+    private static int textureBinds = 0;
+    private static int shaderBinds = 0;
+    private static int jobs = 0;
+    private static int bindsBeforeReordering = 0;
+    private static int bindsAfterReordering = 0;
+    private static boolean bindsCounted = false;
+    private static int fenceWaits = 0;
+
+    // Read by the game, the profiler and JMX from any thread
+    private static volatile Frame last = new Frame(0, 0, 0, 0, 0, 0, 0);
+
+    /**
+     * Seal the class.
+     */
+    private RenderStats() {}
+
+    /**
+     * Returns the number of draw calls sent to the graphics card during the last frame.
+     */
+    public static int getDrawCalls() {
+        return last.drawCalls;
+    }
+
+    /**
+     * Returns how many times a texture was bound during the last frame.
+     */
+    public static int getTextureBinds() {
+        return last.textureBinds;
+    }
+
+    /**
+     * Returns how many times a shader was bound during the last frame.
+     */
+    public static int getShaderBinds() {
+        return last.shaderBinds;
+    }
+
+    /**
+     * Returns how many images (including text and shapes) were drawn in the last frame.
+     */
+    public static int getJobs() {
+        return last.jobs;
+    }
+
+    /**
+     * Returns how many texture and shader binds the last frame's drawing needed in the order it was submitted.
+     */
+    public static int getBindsBeforeReordering() {
+        return last.bindsBeforeReordering;
+    }
+
+    /**
+     * Returns how many texture and shader binds the last frame's drawing needed in the order it was drawn. This is
+     * only different from {@link #getBindsBeforeReordering()} if reordering is enabled; otherwise both are the binds
+     * actually made, as counted by {@link #getTextureBinds()} and {@link #getShaderBinds()}.
+     *
+     * @see Window#setDrawReordering(boolean)
+     */
+    public static int getBindsAfterReordering() {
+        return last.bindsAfterReordering;
+    }
+
+    /**
+     * Returns how many times during the last frame the CPU had to wait for the graphics card to finish reading vertex
+     * data before it could write more. Always zero if the graphics card doesn't support persistently mapped buffers.
+     */
+    public static int getFenceWaits() {
+        return last.fenceWaits;
+    }
+
+    static void countBinds(int before, int after) {
+        bindsBeforeReordering = before;
+        bindsAfterReordering = after;
+        bindsCounted = true;
+    }
+
+    static void countDrawCall() {
+        ++drawCalls;
+    }
+
+    static void countFenceWait() {
+        ++fenceWaits;
+    }
+
+    static void countTextureBind() {
+        ++textureBinds;
+    }
+
+    static void countShaderBind() {
+        ++shaderBinds;
+    }
+
+    static void countJobs(int jobs) {
+        RenderStats.jobs = jobs;
+    }
+
+    /**
+     * Publish the counts for the frame that just finished, and start counting the next one.
+     */
+    static void endFrame() {
+        if (!bindsCounted) {
+            bindsBeforeReordering = textureBinds + shaderBinds;
+            bindsAfterReordering = bindsBeforeReordering;
+        }
+        last = new Frame(drawCalls, textureBinds, shaderBinds, jobs, bindsBeforeReordering, bindsAfterReordering,
+                fenceWaits);
+        drawCalls = 0;
+        textureBinds = 0;
+        shaderBinds = 0;
+        fenceWaits = 0;
+        bindsCounted = false;
+    }
+}
@@ -0,0 +1,187 @@
+package bagel;
+
+import bagel.util.Colour;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.opengl.GL30;
+
+import static org.lwjgl.opengl.GL11.*;
+
+/**
+ * An off-screen image that can be drawn into, for caching drawing that doesn't change from frame to frame.
+ *
+ * Everything drawn from the calling thread between {@link #begin()} and {@link #end()} goes into the target instead of
+ * the screen, using window coordinates with (0, 0) at the target's top-left. Afterwards, {@link #getImage()} draws the
+ * result as one ordinary image, which is far cheaper than redrawing, say, a whole tiled map or a complicated HUD every
+ * frame.
+ *
+ * The contents are kept until {@link #clear()} is called, so a target can be built up over several captures. Partly
+ * transparent pixels drawn onto an empty target come out slightly darker when the target is drawn, so targets suit
+ * opaque content such as backgrounds best.
+ */
+public class RenderTarget {
+    private final int width;
+    private final int height;
+    private final Texture tex;
+    private final Image image;
+    private final int framebuffer;
+    private final RenderQueue queue = new RenderQueue();
+    // With no other threads drawing into it, merging just puts the jobs in layer order
+    private final QueueMerger sorter = new QueueMerger(queue);
+    private boolean capturing = false;
+    private boolean destroyed = false;
+
+    /**
+     * Create an empty (fully transparent) target of the given size in pixels. A window must have been created first.
+     */
+    public RenderTarget(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new BagelError("Render target size must be positive, not " + width + "x" + height);
+        }
+        // Check that a window exists first
+        Window.get();
+        this.width = width;
+        this.height = height;
+        tex = new Texture("render target", width, height, null);
+        image = new Image(tex);
+        framebuffer = Window.callOnMainThread(() -> createFramebuffer(tex));
+        clear();
+    }
+
+    private static int createFramebuffer(Texture tex) {
+        int previous = glGetInteger(GL30.GL_FRAMEBUFFER_BINDING);
+        int framebuffer = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+        GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, tex.getId(), 0);
+        int status = GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, previous);
+        if (status != GL30.GL_FRAMEBUFFER_COMPLETE) {
+            GL30.glDeleteFramebuffers(framebuffer);
+            throw new BagelError("Failed to create framebuffer for render target (status " + status + ")");
+        }
+        return framebuffer;
+    }
+
+    /**
+     * Start drawing into the target from the calling thread. Only one target can be drawn into at a time.
+     */
+    public void begin() {
+        checkNotDestroyed();
+        if (capturing) {
+            throw new BagelError("Render target is already being drawn into");
+        }
+        Window.get().beginCapture(queue);
+        capturing = true;
+    }
+
+    /**
+     * Stop drawing into the target, and update its contents with everything drawn since {@link #begin()}.
+     */
+    public void end() {
+        if (!capturing) {
+            throw new BagelError("Render target ended without being begun");
+        }
+        capturing = false;
+        Window.get().endCapture();
+        if (queue.size() > 0) {
+            sorter.merge();
+            Window.runOnMainThread(this::render);
+        }
+    }
+
+    private void render() {
+        int[] viewport = new int[4];
+        glGetIntegerv(GL_VIEWPORT, viewport);
+        int previous = glGetInteger(GL30.GL_FRAMEBUFFER_BINDING);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+
+        // Mirroring the jobs puts the top of the drawing in the first row of the texture, as with every loaded image.
+        // That reverses the winding of every quad, so the front faces are now the clockwise ones
+        queue.flipVertically(height);
+        glFrontFace(GL_CW);
+        // Keep the target's alpha as the coverage of what was drawn, rather than multiplying it by itself
+        GL14.glBlendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE_MINUS_SRC_ALPHA);
+
+        // The shaders map the window's size onto the viewport, so cover the target one window-sized piece at a time
+        int windowWidth = Window.getWidth();
+        int windowHeight = Window.getHeight();
+        for (int y = 0; y < height; y += windowHeight) {
+            for (int x = 0; x < width; x += windowWidth) {
+                float dx = -x;
+                float dy = y + windowHeight - height;
+                queue.translate(dx, dy);
+                glViewport(x, y, windowWidth, windowHeight);
+                Window.get().renderJobs(queue);
+                queue.translate(-dx, -dy);
+            }
+        }
+
+        glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+        glFrontFace(GL_CCW);
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, previous);
+        glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        queue.clear();
+    }
+
+    /**
+     * Erase the target's contents, leaving it fully transparent.
+     */
+    public void clear() {
+        clear(new Colour(0, 0, 0, 0));
+    }
+
+    /**
+     * Fill the target with a single colour, erasing its contents. Anything drawn since {@link #begin()} is discarded.
+     */
+    public void clear(Colour colour) {
+        checkNotDestroyed();
+        queue.clear();
+        Window.runOnMainThread(() -> {
+            int previous = glGetInteger(GL30.GL_FRAMEBUFFER_BINDING);
+            GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+            glClearColor((float) colour.r, (float) colour.g, (float) colour.b, (float) colour.a);
+            glClear(GL_COLOR_BUFFER_BIT);
+            Window.applyClearColour();
+            GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, previous);
+        });
+    }
+
+    /**
+     * Returns the target's contents as an image, which can be drawn like any other. It shows whatever the target
+     * contains at the time the frame is drawn, not when it is submitted.
+     */
+    public Image getImage() {
+        checkNotDestroyed();
+        return image;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Release the target's graphics memory. Neither the target nor its image can be used afterwards.
+     */
+    public void destroy() {
+        if (destroyed) {
+            return;
+        }
+        if (capturing) {
+            end();
+        }
+        destroyed = true;
+        Window.runOnMainThread(() -> GL30.glDeleteFramebuffers(framebuffer));
+        tex.destroy();
+        queue.free();
+        sorter.free();
+    }
+
+    private void checkNotDestroyed() {
+        if (destroyed) {
+            throw new BagelError("Render target has been destroyed");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package bagel;
+
+/**
+ * Turns a frame's queue of rendering jobs into draw calls.
+ */
+interface Renderer {
+    /**
+     * Draw every job in the queue, in order.
+     */
+    void render(RenderQueue queue);
+
+    /**
+     * Release any graphics memory the renderer holds. It must not be used afterwards.
+     */
+    default void free() {}
+}
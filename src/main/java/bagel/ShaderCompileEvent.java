@@ -0,0 +1,28 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering a shader program being compiled and linked.
+ */
+@Name("bagel.ShaderCompile")
+@Label("Shader Compile")
+@Category({"Bagel", "Rendering"})
+@Description("A shader program compiled and linked")
+class ShaderCompileEvent extends jdk.jfr.Event {
+    @Label("Vertex Shader")
+    String vertexShader;
+
+    @Label("Fragment Shader")
+    String fragmentShader;
+
+    @Label("Succeeded")
+    boolean succeeded;
+
+    @Label("Error")
+    @Description("Why compiling or linking failed, if it did")
+    String error;
+}
@@ -0,0 +1,115 @@
+package bagel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into a fixed-size page using the skyline bottom-left heuristic: the page is described by the outline
+ * of the rectangles placed so far, and each new rectangle goes wherever its top edge would end up lowest.
+ */
+class SkylinePacker {
+    /**
+     * A horizontal piece of the outline: everything above y between x and x + width is still free.
+     */
+    private static class Segment {
+        int x;
+        int y;
+        int width;
+
+        Segment(int x, int y, int width) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int padding;
+    private final List<Segment> skyline = new ArrayList<>();
+
+    SkylinePacker(int width, int height, int padding) {
+        this.width = width;
+        this.height = height;
+        this.padding = padding;
+        skyline.add(new Segment(0, 0, width));
+    }
+
+    /**
+     * Find space for a rectangle of the given size, leaving the padding free to its right and below it.
+     *
+     * @return the top-left of the space as {x, y}, or null if the page has no room left
+     */
+    int[] insert(int w, int h) {
+        int bestIndex = -1;
+        int bestY = Integer.MAX_VALUE;
+        for (int i = 0; i < skyline.size(); ++i) {
+            int y = fit(i, w, h);
+            if (y >= 0 && y < bestY) {
+                bestIndex = i;
+                bestY = y;
+            }
+        }
+        if (bestIndex < 0) {
+            return null;
+        }
+
+        int x = skyline.get(bestIndex).x;
+        // The padding is not needed past the edges of the page
+        place(bestIndex, x, Math.min(bestY + h + padding, height), Math.min(w + padding, width - x));
+        return new int[] { x, bestY };
+    }
+
+    /**
+     * Returns the lowest y at which the rectangle fits when its left edge is at the given segment, or -1 if it does not
+     * fit there at all.
+     */
+    private int fit(int index, int w, int h) {
+        int x = skyline.get(index).x;
+        if (x + w > width) {
+            return -1;
+        }
+        int y = 0;
+        int remaining = Math.min(w + padding, width - x);
+        for (int i = index; remaining > 0; ++i) {
+            Segment segment = skyline.get(i);
+            y = Math.max(y, segment.y);
+            remaining -= segment.width;
+        }
+        return y + h > height ? -1 : y;
+    }
+
+    /**
+     * Raise the skyline to the given top across the given span, starting at the given segment.
+     */
+    private void place(int index, int x, int top, int w) {
+        skyline.add(index, new Segment(x, top, w));
+        int end = x + w;
+
+        // Trim the segments that are now (partly) underneath the new one
+        int i = index + 1;
+        while (i < skyline.size() && skyline.get(i).x < end) {
+            Segment segment = skyline.get(i);
+            int overlap = end - segment.x;
+            if (overlap >= segment.width) {
+                skyline.remove(i);
+            } else {
+                segment.x += overlap;
+                segment.width -= overlap;
+                break;
+            }
+        }
+
+        // Merge neighbouring segments at the same height to keep the outline short
+        for (i = 0; i + 1 < skyline.size(); ) {
+            Segment segment = skyline.get(i);
+            Segment next = skyline.get(i + 1);
+            if (segment.y == next.y) {
+                segment.width += next.width;
+                skyline.remove(i + 1);
+            } else {
+                ++i;
+            }
+        }
+    }
+}
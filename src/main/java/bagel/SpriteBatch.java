@@ -0,0 +1,70 @@
+package bagel;
+
+/**
+ * A shader that collects jobs sharing a texture and draws them together with a single draw call.
+ */
+abstract class SpriteBatch extends Shader {
+    private final int capacity;
+    private int count = 0;
+    private Texture texture;
+
+    /**
+     * @param capacity the most jobs that can be drawn by a single draw call
+     */
+    SpriteBatch(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add a job to the current batch. If it cannot join the batch, the batch is drawn first.
+     */
+    void add(RenderQueue queue, int job) {
+        Texture tex = queue.texture(job);
+        if (count == capacity || (texture != null && !texture.equals(tex))) {
+            flush();
+        }
+        texture = tex;
+        write(queue, job);
+        ++count;
+    }
+
+    /**
+     * Draw everything in the current batch, and start a new one.
+     */
+    void flush() {
+        if (count == 0) {
+            return;
+        }
+        texture.bind();
+        bind();
+        draw(count);
+        RenderStats.countDrawCall();
+
+        count = 0;
+        texture = null;
+    }
+
+    /**
+     * Draw a single job on its own.
+     */
+    @Override
+    void render(RenderQueue queue, int job) {
+        add(queue, job);
+        flush();
+    }
+
+    /**
+     * Store the data for a job that has joined the batch.
+     */
+    abstract void write(RenderQueue queue, int job);
+
+    /**
+     * Upload the stored data and draw it with one draw call. The shader and texture are already bound.
+     */
+    abstract void draw(int count);
+
+    /**
+     * Release the shader's buffers and program. It must not be used afterwards.
+     */
+    abstract void free();
+}
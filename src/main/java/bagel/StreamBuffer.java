@@ -0,0 +1,184 @@
+package bagel;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL44;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A vertex buffer for data that is rewritten every frame.
+ *
+ * Renderers {@link #reserve(int)} space, write their data into the returned buffer, then {@link #commit(int)} it; the
+ * commit gives the offset of the data within the GL buffer, for use with glVertexAttribPointer.
+ *
+ * Where buffer storage is supported (OpenGL 4.4 or ARB_buffer_storage), the buffer is mapped once, persistently, and
+ * split into three regions that are filled in turn. Leaving a region places a fence after the draws that read from
+ * it, and that fence must have passed before the region is written to again; the number of times the CPU actually has
+ * to wait is counted in {@link RenderStats#getFenceWaits()}. Otherwise, data is written into a staging buffer and
+ * uploaded with glBufferSubData, orphaning the whole buffer each time it fills up.
+ */
+class StreamBuffer {
+    private static final int REGIONS = 3;
+    // Offsets are kept aligned so that any vertex format can start at a committed offset
+    private static final int ALIGNMENT = 64;
+    private static final long FENCE_TIMEOUT_NANOS = 1_000_000_000L;
+
+    private final int id;
+    private final int regionSize;
+    private final boolean persistent;
+    // When persistent, the whole mapped buffer; otherwise, a staging buffer the size of one region
+    private final ByteBuffer memory;
+    private final long[] fences = new long[REGIONS];
+    private int region = 0;
+    private int head = 0;
+    private int reserved = 0;
+
+    /**
+     * Create a buffer where each reservation can be at most regionSize bytes.
+     */
+    StreamBuffer(int regionSize) {
+        this.regionSize = align(regionSize);
+        GLCapabilities caps = GL.getCapabilities();
+        persistent = caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+
+        id = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, id);
+        long size = (long) this.regionSize * REGIONS;
+        if (persistent) {
+            int flags = GL30.GL_MAP_WRITE_BIT | GL44.GL_MAP_PERSISTENT_BIT | GL44.GL_MAP_COHERENT_BIT;
+            GL44.glBufferStorage(GL15.GL_ARRAY_BUFFER, size, flags);
+            memory = GL30.glMapBufferRange(GL15.GL_ARRAY_BUFFER, 0, size, flags);
+            if (memory == null) {
+                throw new BagelError("Failed to map streaming vertex buffer");
+            }
+        } else {
+            GL15.glBufferData(GL15.GL_ARRAY_BUFFER, size, GL15.GL_STREAM_DRAW);
+            // Lives as long as the renderer that owns it
+            memory = NativeMemory.alloc(NativeMemory.Kind.STAGING, this.regionSize);
+        }
+    }
+
+    /**
+     * The name of the GL buffer object, for binding to a vertex array.
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Returns true if the buffer is persistently mapped, rather than falling back to orphaning.
+     */
+    boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Returns a buffer with room for at least the given number of bytes, starting at position 0. Nothing written to it
+     * is visible to the graphics card until {@link #commit(int)} is called.
+     */
+    ByteBuffer reserve(int bytes) {
+        if (bytes > regionSize) {
+            throw new BagelError("Cannot reserve " + bytes + " bytes from a stream buffer with regions of "
+                    + regionSize + " bytes");
+        }
+        if (persistent) {
+            int regionStart = region * regionSize;
+            if (head + bytes > regionStart + regionSize) {
+                nextRegion();
+            }
+            reserved = bytes;
+            ByteBuffer view = memory.duplicate();
+            view.position(head);
+            view.limit(head + bytes);
+            return view.slice().order(ByteOrder.nativeOrder());
+        } else {
+            reserved = bytes;
+            memory.clear();
+            return memory;
+        }
+    }
+
+    /**
+     * Make the first `bytes` bytes written since the last {@link #reserve(int)} available to draw calls.
+     *
+     * @return the offset of the data within the GL buffer
+     */
+    long commit(int bytes) {
+        if (bytes > reserved) {
+            throw new BagelError("Committed " + bytes + " bytes to a stream buffer, but only reserved " + reserved);
+        }
+        reserved = 0;
+        int offset;
+        if (persistent) {
+            // The mapping is coherent, so there is nothing to flush
+            offset = head;
+        } else {
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, id);
+            if (head + bytes > regionSize * REGIONS) {
+                // Orphan the old storage so we don't have to wait for the draws still reading from it
+                GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) regionSize * REGIONS, GL15.GL_STREAM_DRAW);
+                head = 0;
+            }
+            memory.position(0);
+            memory.limit(bytes);
+            GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, head, memory);
+            offset = head;
+        }
+        head = offset + align(bytes);
+        return offset;
+    }
+
+    private void nextRegion() {
+        // Everything drawn so far from this region has been submitted; the fence passes once it has been read
+        fences[region] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        region = (region + 1) % REGIONS;
+        head = region * regionSize;
+
+        long fence = fences[region];
+        if (fence == 0) {
+            return;
+        }
+        int result = GL32.glClientWaitSync(fence, 0, 0);
+        if (result == GL32.GL_TIMEOUT_EXPIRED) {
+            RenderStats.countFenceWait();
+            do {
+                result = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT_NANOS);
+            } while (result == GL32.GL_TIMEOUT_EXPIRED);
+        }
+        if (result == GL32.GL_WAIT_FAILED) {
+            throw new BagelError("Failed waiting for the graphics card to finish with a stream buffer");
+        }
+        GL32.glDeleteSync(fence);
+        fences[region] = 0;
+    }
+
+    /**
+     * Release the GL buffer, any fences still pending and the staging buffer. Must be called on the main thread; the
+     * buffer must not be used afterwards.
+     */
+    void free() {
+        for (int i = 0; i < REGIONS; ++i) {
+            if (fences[i] != 0) {
+                GL32.glDeleteSync(fences[i]);
+                fences[i] = 0;
+            }
+        }
+        if (persistent) {
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, id);
+            GL15.glUnmapBuffer(GL15.GL_ARRAY_BUFFER);
+            GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        } else {
+            NativeMemory.free(NativeMemory.Kind.STAGING, memory);
+        }
+        GL15.glDeleteBuffers(id);
+    }
+
+    private static int align(int bytes) {
+        return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+}
@@ -1,14 +1,17 @@
 package bagel;
 
-import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryStack;
 
 import java.nio.ByteBuffer;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.*;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
 
 /**
- * Immutable class that represents a loaded texture.
+ * Immutable class that represents a loaded texture. A texture that is still loading in the background knows its size,
+ * but can't be drawn until {@link #isReady()}. Each texture owns its own GL texture, so textures are compared by
+ * identity; the GL name isn't assigned until a background load finishes.
  */
 class Texture {
     /**
@@ -19,18 +22,30 @@ class Texture {
      * The height of the texture.
      */
     final int h;
-    private final int texId;
-    private final String filename;
+    // Only assigned after construction for textures that load in the background, and only by the main thread
+    private int texId;
+    private volatile boolean ready;
+    // Why a background load failed, or null if it hasn't
+    private volatile String error = null;
+    // For textures loaded from a file, the canonical path they're cached under
+    final String filename;
+    // GL_TEXTURE_2D, or GL_TEXTURE_2D_ARRAY for a texture made of layers
+    private final int target;
 
     private static int boundTexture;
 
-    private static void bindTexture(int texId) {
+    private static void bindTexture(int target, int texId) {
         if (boundTexture != texId) {
-            glBindTexture(GL_TEXTURE_2D, texId);
+            glBindTexture(target, texId);
             boundTexture = texId;
+            RenderStats.countTextureBind();
         }
     }
 
+    private static void bindTexture(int texId) {
+        bindTexture(GL_TEXTURE_2D, texId);
+    }
+
     /**
      * Create the texture from a byte buffer; the filename is only used for `toString`.
      */
@@ -38,9 +53,65 @@ class Texture {
         this.w = w;
         this.h = h;
         this.filename = filename;
+        this.target = GL_TEXTURE_2D;
+        // Textures may be loaded from the update thread, but only the main thread can talk to OpenGL
+        this.texId = Window.callOnMainThread(() -> createTexture(w, h, components, buffer));
+        this.ready = true;
+    }
+
+    /**
+     * Create an RGBA texture whose pixels are still being decoded. It has no GL texture until {@link #uploadPending}.
+     */
+    private Texture(String filename, int w, int h) {
+        this.w = w;
+        this.h = h;
+        this.filename = filename;
+        this.target = GL_TEXTURE_2D;
+        this.texId = 0;
+        this.ready = false;
+    }
+
+    static Texture pending(String filename, int w, int h) {
+        return new Texture(filename, w, h);
+    }
+
+    /**
+     * Create the GL texture for a pending texture from the RGBA pixels at the start of the bound pixel unpack buffer,
+     * and mark it ready. Must be called on the main thread.
+     */
+    void uploadPending() {
+        texId = generateTexture();
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, w, h, 0, GL_RGBA, GL_UNSIGNED_BYTE, 0L);
+        ready = true;
+    }
 
+    /**
+     * Mark a pending texture as never going to be ready, for the given reason.
+     */
+    void fail(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Throws the reason a background load failed, if it did.
+     */
+    void checkFailed() {
+        String error = this.error;
+        if (error != null) {
+            throw new BagelError(error);
+        }
+    }
+
+    /**
+     * Returns whether the texture's pixels are on the graphics card, so it can be drawn.
+     */
+    boolean isReady() {
+        return ready;
+    }
+
+    private static int generateTexture() {
         // GL stuff: see https://github.com/LWJGL/lwjgl3/blob/18975883e844d9dc53874836ec45257da13085d9/modules/samples/src/test/java/org/lwjgl/demo/stb/Image.java#L244
-        this.texId = glGenTextures();
+        int texId = glGenTextures();
         bindTexture(texId);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
@@ -48,6 +119,11 @@ class Texture {
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, 0);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 0);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        return texId;
+    }
+
+    private static int createTexture(int w, int h, int components, ByteBuffer buffer) {
+        int texId = generateTexture();
 
         int format = GL_RGBA;
 
@@ -60,34 +136,79 @@ class Texture {
         }
 
         glTexImage2D(GL_TEXTURE_2D, 0, format, w, h, 0, format, GL_UNSIGNED_BYTE, buffer);
+        return texId;
+    }
+
+    /**
+     * Create an array texture from an RGBA image, with one layer for each tileWidth x tileHeight tile of the image,
+     * taken in rows from the top-left. The width and height of the texture are those of a single layer.
+     */
+    Texture(String filename, int tileWidth, int tileHeight, int layers, int imageWidth, ByteBuffer rgba) {
+        this.w = tileWidth;
+        this.h = tileHeight;
+        this.filename = filename;
+        this.target = GL_TEXTURE_2D_ARRAY;
+        this.texId = Window.callOnMainThread(() -> createArray(tileWidth, tileHeight, layers, imageWidth, rgba));
+        this.ready = true;
+    }
+
+    private static int createArray(int tileWidth, int tileHeight, int layers, int imageWidth, ByteBuffer rgba) {
+        int texId = glGenTextures();
+        bindTexture(GL_TEXTURE_2D_ARRAY, texId);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_BASE_LEVEL, 0);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAX_LEVEL, 0);
+        glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA, tileWidth, tileHeight, layers, 0, GL_RGBA, GL_UNSIGNED_BYTE,
+                (ByteBuffer) null);
+
+        // Copy each tile straight out of the image, rather than cutting it into a buffer of its own first
+        int columns = imageWidth / tileWidth;
+        glPixelStorei(GL_UNPACK_ROW_LENGTH, imageWidth);
+        for (int layer = 0; layer < layers; ++layer) {
+            glPixelStorei(GL_UNPACK_SKIP_PIXELS, layer % columns * tileWidth);
+            glPixelStorei(GL_UNPACK_SKIP_ROWS, layer / columns * tileHeight);
+            glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, layer, tileWidth, tileHeight, 1, GL_RGBA,
+                    GL_UNSIGNED_BYTE, rgba);
+        }
+        glPixelStorei(GL_UNPACK_ROW_LENGTH, 0);
+        glPixelStorei(GL_UNPACK_SKIP_PIXELS, 0);
+        glPixelStorei(GL_UNPACK_SKIP_ROWS, 0);
+        return texId;
     }
 
     Texture(int w, int h, ByteBuffer bitmap) {
-        this.w = w;
-        this.h = h;
-        this.filename = "";
-        this.texId = glGenTextures();
-        bindTexture(texId);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, 0);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 0);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, w, h, 0, GL_RGBA, GL_UNSIGNED_BYTE, bitmap);
+        this("", w, h, bitmap);
+    }
+
+    /**
+     * Create an RGBA texture; the name is only used for `toString`. If the bitmap is null, the texture starts out empty,
+     * to be filled in later with {@link #upload}.
+     */
+    Texture(String name, int w, int h, ByteBuffer bitmap) {
+        this(name, w, h, 4, bitmap);
+    }
+
+    /**
+     * Replace the part of the texture with top-left (x, y) with the given RGBA pixels.
+     */
+    void upload(int x, int y, int w, int h, ByteBuffer rgba) {
+        Window.runOnMainThread(() -> {
+            bindTexture(texId);
+            glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, w, h, GL_RGBA, GL_UNSIGNED_BYTE, rgba);
+        });
     }
 
     private static OnceAssignable<Texture> singlePixelTex = new OnceAssignable<>();
 
     static Texture singlePixel() {
         singlePixelTex.setIfEmpty(() -> {
-            ByteBuffer whitePixel = BufferUtils.createByteBuffer(4);
-            whitePixel.put((byte) 255);
-            whitePixel.put((byte) 255);
-            whitePixel.put((byte) 255);
-            whitePixel.put((byte) 255);
-            whitePixel.rewind();
-            return new Texture(1, 1, whitePixel);
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                ByteBuffer whitePixel = stack.bytes((byte) 255, (byte) 255, (byte) 255, (byte) 255);
+                return new Texture(1, 1, whitePixel);
+            }
         });
         return singlePixelTex.get();
     }
@@ -96,25 +217,30 @@ class Texture {
      * Binds this texture to the graphics card, if it's not already bound.
      */
     void bind() {
-        bindTexture(texId);
+        bindTexture(target, texId);
+    }
+
+    /**
+     * The name of the GL texture object, for attaching to a framebuffer.
+     */
+    int getId() {
+        return texId;
     }
 
     void destroy() {
-        glDeleteTextures(texId);
+        Window.runOnMainThread(() -> {
+            if (texId != 0) {
+                glDeleteTextures(texId);
+                // The name may be handed straight back by glGenTextures, which must then really bind it
+                if (boundTexture == texId) {
+                    boundTexture = 0;
+                }
+            }
+        });
     }
 
     @Override
     public String toString() {
         return "Texture: " + filename + " (tex id " + texId + ")";
     }
-
-    @Override
-    public boolean equals(Object rhs) {
-        return rhs instanceof Texture && ((Texture) rhs).texId == texId;
-    }
-
-    @Override
-    public int hashCode() {
-        return texId;
-    }
 }
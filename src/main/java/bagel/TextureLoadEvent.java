@@ -0,0 +1,40 @@
+package bagel;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event covering an image being loaded from disk and uploaded to the graphics card.
+ */
+@Name("bagel.TextureLoad")
+@Label("Texture Load")
+@Category({"Bagel", "Assets"})
+@Description("An image file loaded into a texture")
+class TextureLoadEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Decode Time")
+    @Description("Time spent decoding the file, before uploading it")
+    @Timespan
+    long decodeTime;
+
+    @Label("Bytes")
+    @Description("Size of the decoded pixels")
+    @DataAmount
+    long bytes;
+
+    @Label("Atlas")
+    @Description("Whether the image was packed into an atlas page")
+    boolean atlas;
+}
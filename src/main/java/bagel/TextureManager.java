@@ -1,5 +1,7 @@
 package bagel;
 
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
 
@@ -7,15 +9,95 @@ import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Caches loaded textures for convenience's sake.
+ *
+ * Textures are cached by their canonical path, so different spellings of the same file share a texture. Each image
+ * with a texture of its own holds a reference to it until the image is disposed. Textures nothing refers to stay cached
+ * in case they're needed again, until the estimated texture memory goes over budget; then the least recently used are
+ * freed, and loaded again if they're asked for later. Tile arrays are cached and freed the same way. Atlas pages are
+ * shared, so they are never freed early.
+ *
+ * Textures are only freed between frames, once every frame that could have drawn them has been drawn, so a job queued
+ * before its image was disposed never draws a deleted texture.
  */
 class TextureManager {
-    private static final Map<String, Texture> loadedTextures = new HashMap<>();
+    /**
+     * An image's pixels, either decoded from its file or mapped from a mounted {@link AssetPack}.
+     */
+    private static class Pixels {
+        final int w;
+        final int h;
+        final int components;
+        final ByteBuffer data;
+        final long decodeTime;
+        // Mapped pixels belong to the pack, and are never freed
+        final boolean packed;
+
+        Pixels(int w, int h, int components, ByteBuffer data, long decodeTime, boolean packed) {
+            this.w = w;
+            this.h = h;
+            this.components = components;
+            this.data = data;
+            this.decodeTime = decodeTime;
+            this.packed = packed;
+        }
+
+        void free() {
+            if (!packed) {
+                NativeMemory.freeImage(data);
+            }
+        }
+    }
+
+    private static class CachedTexture {
+        final Texture tex;
+        // For a tile array's texture, the tile array; otherwise null
+        final TileArray tiles;
+        final long bytes;
+        int references = 0;
+        // The frame during whose update the last reference was dropped
+        long releasedFrame = 0;
+
+        CachedTexture(Texture tex) {
+            this.tex = tex;
+            this.tiles = null;
+            this.bytes = (long) tex.w * tex.h * 4;
+        }
+
+        CachedTexture(TileArray tiles, int layers) {
+            this.tex = tiles.tex;
+            this.tiles = tiles;
+            this.bytes = (long) tex.w * tex.h * layers * 4;
+        }
+    }
+
+    // In access order, so the least recently used come first
+    private static final Map<String, CachedTexture> loadedTextures = new LinkedHashMap<>(16, 0.75f, true);
     private static final Map<FontClassification, InternalFont> loadedFonts = new HashMap<>();
+    private static final Map<String, CachedTexture> loadedTileArrays = new LinkedHashMap<>(16, 0.75f, true);
+
+    private static final Map<String, TextureRegion> atlasRegions = new HashMap<>();
+    private static final List<AtlasPage> atlasPages = new ArrayList<>();
+    private static boolean atlasEnabled = false;
+    private static int atlasPageSize;
+    private static int atlasPadding;
+    private static int atlasMaxImageSize;
+
+    // Kept up to date as things load, so monitoring threads can read them without touching the maps
+    private static volatile int textureCount = 0;
+    private static volatile long textureBytes = 0;
+    private static volatile int fontCount = 0;
+    private static long budgetBytes = Long.MAX_VALUE;
+    // The number of updates that have finished; only changed between frames
+    private static long frames = 0;
 
     /**
      * Seal the class.
@@ -26,37 +108,371 @@ class TextureManager {
      * Free all loaded textures.
      */
     static void destroy() {
-        for (Texture tex : loadedTextures.values()) {
-            tex.destroy();
+        for (CachedTexture cached : loadedTextures.values()) {
+            cached.tex.destroy();
         }
+        for (AtlasPage page : atlasPages) {
+            page.destroy();
+        }
+        for (CachedTexture cached : loadedTileArrays.values()) {
+            cached.tex.destroy();
+        }
+        for (InternalFont font : loadedFonts.values()) {
+            font.destroy();
+        }
+        AsyncTextureLoader.destroy();
+        textureCount = 0;
+        textureBytes = 0;
+        fontCount = 0;
     }
 
     /**
-     * Looks up the provided texture, and loads it if it's not already present.
+     * Returns the number of textures loaded, including atlas pages.
      */
-    static Texture getTexture(String filename) {
-        if (loadedTextures.containsKey(filename)) {
-            return loadedTextures.get(filename);
-        } else if (!new File(filename).exists()) {
+    static int getTextureCount() {
+        return textureCount;
+    }
+
+    /**
+     * Returns an estimate of the graphics memory used by loaded textures and fonts, assuming four bytes per pixel.
+     */
+    static long getTextureBytes() {
+        return textureBytes;
+    }
+
+    static int getFontCount() {
+        return fontCount;
+    }
+
+    private static void countTexture(int w, int h) {
+        ++textureCount;
+        textureBytes += (long) w * h * 4;
+    }
+
+    /**
+     * Returns the key the file's texture is cached under, so that "res\\a.png", "./res/a.png" and "res/a.png" all load
+     * the same texture.
+     */
+    static String canonicalPath(String filename) {
+        return Paths.get(filename.replace('\\', '/')).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * Set the estimated texture memory, in bytes, above which textures that no image refers to are freed. Takes effect
+     * at the end of the frame.
+     */
+    static void setBudget(long bytes) {
+        if (bytes < 0) {
+            throw new BagelError("Invalid texture memory budget: " + bytes + " bytes");
+        }
+        budgetBytes = bytes;
+    }
+
+    /**
+     * Add a reference to the given texture, if it's one of the cached textures. Must be balanced by {@link #release}.
+     */
+    static void retain(Texture tex) {
+        CachedTexture cached = loadedTextures.get(tex.filename);
+        if (cached != null && cached.tex == tex) {
+            ++cached.references;
+        }
+    }
+
+    /**
+     * Drop a reference to the given texture, if it's one of the cached textures. Once nothing refers to it, it may be
+     * freed to stay within budget after this frame has been drawn.
+     */
+    static void release(Texture tex) {
+        CachedTexture cached = loadedTextures.get(tex.filename);
+        if (cached != null && cached.tex == tex && cached.references > 0) {
+            --cached.references;
+            if (cached.references == 0) {
+                cached.releasedFrame = frames;
+            }
+        }
+    }
+
+    /**
+     * Drop a reference to the given tile array. Once nothing refers to it, it may be freed to stay within budget after
+     * this frame has been drawn, like a texture.
+     */
+    static void releaseTileArray(TileArray tiles) {
+        CachedTexture cached = loadedTileArrays.get(tileArrayKey(tiles.tex.filename, tiles.tex.w, tiles.tex.h));
+        if (cached != null && cached.tex == tiles.tex && cached.references > 0) {
+            --cached.references;
+            if (cached.references == 0) {
+                cached.releasedFrame = frames;
+            }
+        }
+    }
+
+    private static String tileArrayKey(String path, int tileWidth, int tileHeight) {
+        return path + "@" + tileWidth + "x" + tileHeight;
+    }
+
+    /**
+     * Drop a texture that failed to load from the cache, so that it is loaded again if it's asked for.
+     */
+    static void forget(Texture tex) {
+        CachedTexture cached = loadedTextures.get(tex.filename);
+        if (cached != null && cached.tex == tex) {
+            loadedTextures.remove(tex.filename);
+            --textureCount;
+            textureBytes -= cached.bytes;
+        }
+    }
+
+    /**
+     * Called by the main thread between frames, when no update is running. If the frame just updated has also been
+     * drawn, textures released during it may be freed; otherwise they are kept until the next frame ends.
+     */
+    static void endFrame(boolean drawn) {
+        ++frames;
+        evictOverBudget(drawn ? frames : frames - 1);
+    }
+
+    /**
+     * Free the least recently used textures nothing refers to until back within budget, skipping any released during
+     * one of the frames that haven't been drawn yet.
+     */
+    private static void evictOverBudget(long drawnFrames) {
+        evictOverBudget(loadedTextures, drawnFrames);
+        evictOverBudget(loadedTileArrays, drawnFrames);
+    }
+
+    private static void evictOverBudget(Map<String, CachedTexture> cache, long drawnFrames) {
+        Iterator<CachedTexture> it = cache.values().iterator();
+        while (textureBytes > budgetBytes && it.hasNext()) {
+            CachedTexture cached = it.next();
+            // Textures still loading in the background are left alone until they finish
+            if (cached.references == 0 && cached.releasedFrame < drawnFrames && cached.tex.isReady()) {
+                it.remove();
+                cached.tex.destroy();
+                --textureCount;
+                textureBytes -= cached.bytes;
+            }
+        }
+    }
+
+    private static Texture cache(String path, Texture tex) {
+        CachedTexture cached = new CachedTexture(tex);
+        cached.references = 1;
+        loadedTextures.put(path, cached);
+        countTexture(tex.w, tex.h);
+        return tex;
+    }
+
+    /**
+     * Pack images loaded from now on into shared atlas pages of the given size (clamped to what the graphics card
+     * supports), leaving the given padding between them. Images larger than maxImageSize in either direction are still
+     * given a texture of their own.
+     */
+    static void enableAtlas(int pageSize, int padding, int maxImageSize) {
+        if (pageSize <= 0 || padding < 0 || maxImageSize <= 0) {
+            throw new BagelError("Invalid atlas settings: page size " + pageSize + ", padding " + padding
+                    + ", maximum image size " + maxImageSize);
+        }
+        atlasEnabled = true;
+        atlasPageSize = pageSize;
+        atlasPadding = padding;
+        atlasMaxImageSize = maxImageSize;
+    }
+
+    static void disableAtlas() {
+        atlasEnabled = false;
+    }
+
+    /**
+     * Looks up the part of a texture holding the provided image, and loads it if it's not already present. If atlas mode
+     * is enabled, small images are packed into a shared atlas page. An image with a texture of its own counts as a
+     * reference to it.
+     */
+    static TextureRegion getRegion(String filename) {
+        filename = canonicalPath(filename);
+        if (atlasRegions.containsKey(filename)) {
+            return atlasRegions.get(filename);
+        } else if (!atlasEnabled || loadedTextures.containsKey(filename)) {
+            return new TextureRegion(getTexture(filename));
+        }
+
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+        // Atlas pages are RGBA, so ask for every image in that format
+        Pixels image = loadPixels(filename, 4);
+        try {
+            int pageSize = Math.min(atlasPageSize,
+                    Window.callOnMainThread(() -> GL11.glGetInteger(GL11.GL_MAX_TEXTURE_SIZE)));
+            if (image.w > atlasMaxImageSize || image.h > atlasMaxImageSize || image.w > pageSize || image.h > pageSize) {
+                Texture tex = cache(filename, new Texture(filename, image.w, image.h, 4, image.data));
+                commitLoad(event, filename, image, false);
+                return new TextureRegion(tex);
+            }
+
+            TextureRegion region = null;
+            for (int i = 0; region == null && i < atlasPages.size(); ++i) {
+                region = atlasPages.get(i).add(image.w, image.h, image.data);
+            }
+            if (region == null) {
+                AtlasPage page = new AtlasPage(atlasPages.size(), pageSize, atlasPadding);
+                atlasPages.add(page);
+                countTexture(pageSize, pageSize);
+                region = page.add(image.w, image.h, image.data);
+            }
+            atlasRegions.put(filename, region);
+            commitLoad(event, filename, image, true);
+            return region;
+        } finally {
+            // The pixels have been copied to the graphics card
+            image.free();
+        }
+    }
+
+    /**
+     * Like {@link #getRegion}, but an image that isn't loaded yet is decoded in the background, and its texture isn't
+     * ready to draw until it has been uploaded. Images loaded this way are never packed into the atlas.
+     */
+    static TextureRegion getAsyncRegion(String filename) {
+        filename = canonicalPath(filename);
+        if (atlasRegions.containsKey(filename)) {
+            return atlasRegions.get(filename);
+        } else if (loadedTextures.containsKey(filename) || AssetPack.getImage(filename) != null) {
+            // Packed images need no decoding, so there's nothing to gain by loading them in the background
+            return new TextureRegion(getTexture(filename));
+        }
+
+        checkExists(filename);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer components = stack.mallocInt(1);
+
+            // Only the header is read here, so the image's size is known straight away
+            ByteBuffer fname = IOUtils.stringToByteBuffer(stack, filename + '\0');
+            if (!STBImage.stbi_info(fname, w, h, components)) {
+                throw new BagelError("Error loading image: " + filename + ": " + STBImage.stbi_failure_reason());
+            }
+            Texture tex = cache(filename, Texture.pending(filename, w.get(0), h.get(0)));
+            AsyncTextureLoader.load(filename, tex);
+            return new TextureRegion(tex);
+        }
+    }
+
+    private static void commitLoad(TextureLoadEvent event, String filename, Pixels image, boolean atlas) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = filename;
+            event.width = image.w;
+            event.height = image.h;
+            event.bytes = (long) image.w * image.h * image.components;
+            event.decodeTime = image.decodeTime;
+            event.atlas = atlas;
+            event.commit();
+        }
+    }
+
+    private static void checkExists(String filename) {
+        if (!new File(filename).exists()) {
             throw new BagelError("Error loading image: File " + filename + " not found (full path: " + Paths.get(filename).toAbsolutePath() + ")");
+        }
+    }
+
+    /**
+     * Returns the pixels of the image at the given canonical path, taken straight from a mounted asset pack if one holds
+     * it, or else decoded from the file with the given number of components (0 to keep the file's own). Must be given
+     * back to {@link Pixels#free} once they're on the graphics card.
+     */
+    private static Pixels loadPixels(String filename, int desiredComponents) {
+        AssetPack.PackedImage packed = AssetPack.getImage(filename);
+        if (packed != null) {
+            return new Pixels(packed.width, packed.height, 4, packed.rgba, 0, true);
+        }
+
+        checkExists(filename);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer components = stack.mallocInt(1);
+
+            ByteBuffer fname = IOUtils.stringToByteBuffer(stack, filename + '\0');
+            long decodeStart = System.nanoTime();
+            ByteBuffer image = NativeMemory.trackImage(STBImage.stbi_load(fname, w, h, components, desiredComponents));
+            if (image == null) {
+                throw new BagelError("Error loading image: " + filename + ": " + STBImage.stbi_failure_reason());
+            }
+            return new Pixels(w.get(0), h.get(0), desiredComponents == 0 ? components.get(0) : desiredComponents,
+                    image, System.nanoTime() - decodeStart, false);
+        }
+    }
+
+    /**
+     * Looks up the provided texture, and loads it if it's not already present. Counts as a reference to the texture.
+     */
+    static Texture getTexture(String filename) {
+        filename = canonicalPath(filename);
+        CachedTexture cached = loadedTextures.get(filename);
+        if (cached != null) {
+            ++cached.references;
+            return cached.tex;
         } else {
-            try (MemoryStack stack = MemoryStack.stackPush()) {
-                IntBuffer w = stack.mallocInt(1);
-                IntBuffer h = stack.mallocInt(1);
-                IntBuffer components = stack.mallocInt(1);
-
-                ByteBuffer fname = IOUtils.stringToByteBuffer(stack, filename + '\0');
-                // Load the image
-                ByteBuffer image = STBImage.stbi_load(fname, w, h, components, 0);
-                if (image == null) {
-                    throw new BagelError("Error loading image: " + filename + ": " + STBImage.stbi_failure_reason());
-                }
-
-                // Create the texture object
-                Texture tex = new Texture(filename, w.get(0), h.get(0), components.get(0), image);
-                loadedTextures.put(filename, tex);
-                return tex;
+            TextureLoadEvent event = new TextureLoadEvent();
+            event.begin();
+            Pixels image = loadPixels(filename, 0);
+            // Create the texture object
+            Texture tex;
+            try {
+                tex = cache(filename, new Texture(filename, image.w, image.h, image.components, image.data));
+            } finally {
+                // The pixels have been copied to the graphics card
+                image.free();
+            }
+            commitLoad(event, filename, image, false);
+            return tex;
+        }
+    }
+
+    /**
+     * Looks up the provided image cut into tiles of the given size, and loads it if it's not already present. Tile
+     * arrays are never packed into the atlas. Counts as a reference to the tile array.
+     */
+    static TileArray getTileArray(String filename, int tileWidth, int tileHeight) {
+        filename = canonicalPath(filename);
+        String key = tileArrayKey(filename, tileWidth, tileHeight);
+        CachedTexture cached = loadedTileArrays.get(key);
+        if (cached != null) {
+            ++cached.references;
+            return cached.tiles;
+        }
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new BagelError("Invalid tile size " + tileWidth + "x" + tileHeight + " for image: " + filename);
+        }
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+        // Every layer is RGBA, so ask for the image in that format
+        Pixels image = loadPixels(filename, 4);
+        try {
+            int columns = image.w / tileWidth;
+            int layers = columns * (image.h / tileHeight);
+            if (layers == 0) {
+                throw new BagelError("Error loading image: " + filename + " is smaller than one " + tileWidth
+                        + "x" + tileHeight + " tile");
             }
+            int maxLayers = Window.callOnMainThread(() -> GL11.glGetInteger(GL30.GL_MAX_ARRAY_TEXTURE_LAYERS));
+            if (layers > maxLayers) {
+                throw new BagelError("Error loading image: " + filename + " has " + layers
+                        + " tiles, but the graphics card supports at most " + maxLayers);
+            }
+            Texture tex = new Texture(filename, tileWidth, tileHeight, layers, image.w, image.data);
+            TileArray tiles = new TileArray(tex, columns, layers);
+            cached = new CachedTexture(tiles, layers);
+            cached.references = 1;
+            loadedTileArrays.put(key, cached);
+            ++textureCount;
+            textureBytes += cached.bytes;
+            commitLoad(event, filename, image, false);
+            return tiles;
+        } finally {
+            // The pixels have been copied to the graphics card
+            image.free();
         }
     }
 
@@ -65,8 +481,23 @@ class TextureManager {
         if (loadedFonts.containsKey(key)) {
             return loadedFonts.get(key);
         } else {
-            InternalFont font = new InternalFont(filename, size);
+            FontLoadEvent event = new FontLoadEvent();
+            event.begin();
+            // Fonts in a mounted asset pack are already baked
+            AssetPack.PackedFont packed = AssetPack.getFont(filename, size);
+            InternalFont font = packed != null
+                    ? new InternalFont(filename, size, packed.width, packed.height, packed.chars, packed.rgba)
+                    : new InternalFont(filename, size);
             loadedFonts.put(key, font);
+            ++fontCount;
+            textureBytes += font.getTextureBytes();
+            event.end();
+            if (event.shouldCommit()) {
+                event.file = filename;
+                event.size = size;
+                event.bytes = font.getTextureBytes();
+                event.commit();
+            }
             return font;
         }
     }
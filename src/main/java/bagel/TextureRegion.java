@@ -0,0 +1,27 @@
+package bagel;
+
+/**
+ * A rectangular part of a texture, in pixels. Images loaded into an atlas only own a region of the atlas page.
+ */
+class TextureRegion {
+    final Texture tex;
+    final int x;
+    final int y;
+    final int w;
+    final int h;
+
+    TextureRegion(Texture tex, int x, int y, int w, int h) {
+        this.tex = tex;
+        this.x = x;
+        this.y = y;
+        this.w = w;
+        this.h = h;
+    }
+
+    /**
+     * The region covering the whole of a texture.
+     */
+    TextureRegion(Texture tex) {
+        this(tex, 0, 0, tex.w, tex.h);
+    }
+}
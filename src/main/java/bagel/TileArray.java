@@ -0,0 +1,82 @@
+package bagel;
+
+/**
+ * An image cut into equally sized tiles, each kept in its own layer of an array texture, for use with a
+ * {@link TileMesh}.
+ *
+ * Unlike sections of an {@link Image}, neighbouring tiles can never bleed into each other, whatever the filtering or
+ * camera position. Tiles are numbered in rows from the top-left of the image; any part of the image that doesn't fill a
+ * whole tile is left out.
+ */
+public class TileArray {
+    final Texture tex;
+    private final int columns;
+    private final int tileCount;
+    private boolean disposed = false;
+
+    /**
+     * Load the image from the given file, and cut it into tiles of the given size.
+     */
+    public TileArray(String filename, int tileWidth, int tileHeight) {
+        TileArray loaded = TextureManager.getTileArray(filename, tileWidth, tileHeight);
+        tex = loaded.tex;
+        columns = loaded.columns;
+        tileCount = loaded.tileCount;
+    }
+
+    TileArray(Texture tex, int columns, int tileCount) {
+        this.tex = tex;
+        this.columns = columns;
+        this.tileCount = tileCount;
+    }
+
+    public int getTileWidth() {
+        return tex.w;
+    }
+
+    public int getTileHeight() {
+        return tex.h;
+    }
+
+    /**
+     * Returns the number of tiles in each row of the original image.
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of tiles, which is also the number of layers in the texture.
+     */
+    public int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * Returns the layer holding the tile whose top-left is at (x, y) in the original image.
+     */
+    int layerAt(double x, double y) {
+        int column = (int) (x / tex.w);
+        int row = (int) (y / tex.h);
+        if (column * tex.w != x || row * tex.h != y || column < 0 || column >= columns) {
+            throw new BagelError("(" + x + ", " + y + ") is not the top-left of a " + tex.w + "x" + tex.h + " tile");
+        }
+        int layer = column + row * columns;
+        if (layer < 0 || layer >= tileCount) {
+            throw new BagelError("(" + x + ", " + y + ") is outside the image");
+        }
+        return layer;
+    }
+
+    /**
+     * Release this tile array's hold on its texture. Once nothing uses the texture, it can be freed to stay within the
+     * budget set by {@link Image#setTextureMemoryBudget}; loading the same tiles again reloads it if it was. Meshes
+     * using the tile array can't be drawn afterwards. Disposing a tile array more than once has no further effect.
+     */
+    public void dispose() {
+        if (!disposed) {
+            disposed = true;
+            TextureManager.releaseTileArray(this);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package bagel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A fixed arrangement of tiles cut from one image, kept on the graphics card and drawn with a single draw call. The
+ * tiles can come from sections of an {@link Image}, or from a {@link TileArray} so that they never bleed into each
+ * other.
+ *
+ * Drawing thousands of tiles as separate images costs a job for each one every frame. A mesh is built once with
+ * {@link #addTile}, uploaded the first time it is drawn, and afterwards costs one job and one draw call no matter how
+ * many tiles it holds. Changing the mesh uploads it again, so it suits content that rarely changes, such as the layers
+ * of a {@link bagel.map.TiledMap}.
+ *
+ * Tiles are placed in the mesh's own coordinates, which are mapped onto the window when the mesh is drawn. Animated
+ * tiles are added with {@link #addAnimation} and {@link #addAnimatedTile}; they animate on the graphics card, so they
+ * cost no more than static tiles and never cause the mesh to be uploaded again.
+ */
+public class TileMesh {
+    /**
+     * The most tiles a single mesh can hold.
+     */
+    public static final int MAX_TILES = MeshGeometry.MAX_QUADS;
+    private static final int FLOATS_PER_TILE = MeshGeometry.FLOATS_PER_VERTEX * MeshGeometry.VERTICES_PER_QUAD;
+
+    // Exactly one of these is set
+    private final Image image;
+    private final TileArray tileArray;
+    private final MeshGeometry geometry;
+    private float[] vertices = new float[64 * FLOATS_PER_TILE];
+    private int tiles = 0;
+    // The frame table read by mesh.vert; see MeshGeometry
+    private float[] frames = new float[0];
+    private int frameEntries = 0;
+    // For each animation: where its header is in the frame table, and the section of its first frame
+    private final List<double[]> animations = new ArrayList<>();
+    // Whether the tiles have changed since the geometry was last handed to the graphics card
+    private boolean dirty = false;
+
+    /**
+     * Create an empty mesh whose tiles come from the given image.
+     */
+    public TileMesh(Image image) {
+        this.image = image;
+        this.tileArray = null;
+        this.geometry = new MeshGeometry(false);
+    }
+
+    /**
+     * Create an empty mesh whose tiles come from the given tile array. Sections passed to this mesh must be the
+     * top-left of one of the array's tiles in the original image, and that whole tile is drawn at the given size.
+     */
+    public TileMesh(TileArray tiles) {
+        this.image = null;
+        this.tileArray = tiles;
+        this.geometry = new MeshGeometry(true);
+    }
+
+    /**
+     * Add a tile: the part of the image with top-left (sectionX, sectionY) and the given size, drawn with its top-left
+     * at (x, y) in the mesh's coordinates. The tile can be mirrored in either direction.
+     */
+    public void addTile(double x, double y, double sectionX, double sectionY, double width, double height,
+                        boolean flipHorizontal, boolean flipVertical) {
+        addQuad(x, y, sectionX, sectionY, width, height, flipHorizontal, flipVertical, -1);
+    }
+
+    /**
+     * Define an animation for {@link #addAnimatedTile}. Frame i is the part of the image with top-left
+     * (sectionXs[i], sectionYs[i]), shown for durations[i] milliseconds; the animation loops forever. Every frame is the
+     * size of the tiles it is used for.
+     *
+     * @return a number identifying the animation within this mesh
+     */
+    public int addAnimation(double[] sectionXs, double[] sectionYs, int[] durations) {
+        if (sectionXs.length == 0 || sectionXs.length != sectionYs.length || sectionXs.length != durations.length) {
+            throw new BagelError("An animation needs the same, non-zero number of sections and durations");
+        }
+        int header = frameEntries;
+        int first = header + 1;
+        int total = 0;
+        addFrameEntry(first, durations.length, 0, 0);
+        for (int i = 0; i < durations.length; ++i) {
+            if (durations[i] < 0) {
+                throw new BagelError("Animation frame durations cannot be negative");
+            }
+            total += durations[i];
+            if (tileArray != null) {
+                int layer = tileArray.layerAt(sectionXs[i], sectionYs[i]);
+                addFrameEntry(total, 0, 0, layer - tileArray.layerAt(sectionXs[0], sectionYs[0]));
+            } else {
+                addFrameEntry(total,
+                        (float) ((sectionXs[i] - sectionXs[0]) / image.tex.w),
+                        (float) ((sectionYs[i] - sectionYs[0]) / image.tex.h),
+                        0);
+            }
+        }
+        frames[header * MeshGeometry.FLOATS_PER_FRAME_ENTRY + 2] = total;
+        animations.add(new double[] { header, sectionXs[0], sectionYs[0] });
+        dirty = true;
+        return animations.size() - 1;
+    }
+
+    private void addFrameEntry(float x, float y, float z, float w) {
+        int i = frameEntries * MeshGeometry.FLOATS_PER_FRAME_ENTRY;
+        if (frames.length < i + MeshGeometry.FLOATS_PER_FRAME_ENTRY) {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, 16 * MeshGeometry.FLOATS_PER_FRAME_ENTRY));
+        }
+        frames[i] = x;
+        frames[i + 1] = y;
+        frames[i + 2] = z;
+        frames[i + 3] = w;
+        ++frameEntries;
+    }
+
+    /**
+     * Add a tile of the given size that plays an animation from {@link #addAnimation}, drawn with its top-left at
+     * (x, y) in the mesh's coordinates. The tile can be mirrored in either direction.
+     */
+    public void addAnimatedTile(double x, double y, double width, double height, int animation,
+                                boolean flipHorizontal, boolean flipVertical) {
+        if (animation < 0 || animation >= animations.size()) {
+            throw new BagelError("Animation " + animation + " has not been added to this mesh");
+        }
+        double[] info = animations.get(animation);
+        addQuad(x, y, info[1], info[2], width, height, flipHorizontal, flipVertical, (float) info[0]);
+    }
+
+    private void addQuad(double x, double y, double sectionX, double sectionY, double width, double height,
+                         boolean flipHorizontal, boolean flipVertical, float animation) {
+        if (tiles == MAX_TILES) {
+            throw new BagelError("A tile mesh can hold at most " + MAX_TILES + " tiles");
+        }
+        if (vertices.length < (tiles + 1) * FLOATS_PER_TILE) {
+            vertices = Arrays.copyOf(vertices, Math.min(vertices.length * 2, MAX_TILES * FLOATS_PER_TILE));
+        }
+
+        float left = (float) x;
+        float top = (float) y;
+        float right = (float) (x + width);
+        float bottom = (float) (y + height);
+        float u0, v0, u1, v1, layer;
+        if (tileArray != null) {
+            // Each layer holds exactly one tile
+            u0 = 0;
+            v0 = 0;
+            u1 = 1;
+            v1 = 1;
+            layer = tileArray.layerAt(sectionX, sectionY);
+        } else {
+            Texture tex = image.tex;
+            u0 = (float) ((image.regionX + sectionX) / tex.w);
+            v0 = (float) ((image.regionY + sectionY) / tex.h);
+            u1 = (float) ((image.regionX + sectionX + width) / tex.w);
+            v1 = (float) ((image.regionY + sectionY + height) / tex.h);
+            layer = 0;
+        }
+        if (flipHorizontal) {
+            float u = u0;
+            u0 = u1;
+            u1 = u;
+        }
+        if (flipVertical) {
+            float v = v0;
+            v0 = v1;
+            v1 = v;
+        }
+
+        // Corners in the same order as Shader.QUAD_VERTICES, so that QUAD_INDICES winds them the same way
+        int i = tiles * FLOATS_PER_TILE;
+        i = putVertex(i, right, bottom, u1, v1, layer, animation);
+        i = putVertex(i, right, top, u1, v0, layer, animation);
+        i = putVertex(i, left, top, u0, v0, layer, animation);
+        putVertex(i, left, bottom, u0, v1, layer, animation);
+        ++tiles;
+        dirty = true;
+    }
+
+    private int putVertex(int i, float x, float y, float u, float v, float layer, float animation) {
+        vertices[i] = x;
+        vertices[i + 1] = y;
+        vertices[i + 2] = u;
+        vertices[i + 3] = v;
+        vertices[i + 4] = layer;
+        vertices[i + 5] = animation;
+        return i + MeshGeometry.FLOATS_PER_VERTEX;
+    }
+
+    /**
+     * Remove every tile and animation from the mesh.
+     */
+    public void clear() {
+        if (tiles > 0 || frameEntries > 0) {
+            tiles = 0;
+            frameEntries = 0;
+            animations.clear();
+            dirty = true;
+        }
+    }
+
+    /**
+     * Returns the number of tiles in the mesh.
+     */
+    public int getTileCount() {
+        return tiles;
+    }
+
+    /**
+     * Draw the whole mesh with its origin at (x, y).
+     */
+    public void draw(double x, double y) {
+        draw(x, y, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Draw the part of the mesh between (left, top) and (right, bottom) in the mesh's coordinates, with the mesh's
+     * origin at (x, y). Nothing outside that rectangle is drawn.
+     */
+    public void draw(double x, double y, double left, double top, double right, double bottom) {
+        if (dirty) {
+            geometry.setContents(Arrays.copyOf(vertices, tiles * FLOATS_PER_TILE),
+                    Arrays.copyOf(frames, frameEntries * MeshGeometry.FLOATS_PER_FRAME_ENTRY));
+            dirty = false;
+        }
+        Texture tex = tileArray != null ? tileArray.tex : image.tex;
+        // An image loaded in the background has nothing to draw until it's ready
+        if (tiles == 0 || !tex.isReady()) {
+            return;
+        }
+        Window.get().getRenderQueue().add(tex, geometry,
+                (float) x, (float) y,
+                (float) left, (float) top, (float) right, (float) bottom,
+                1, 1,
+                0,
+                1, 1, 1, 1);
+    }
+
+    /**
+     * Release the mesh's graphics memory. It must not be used afterwards.
+     */
+    public void destroy() {
+        geometry.destroy();
+    }
+}
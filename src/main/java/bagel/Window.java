@@ -1,11 +1,20 @@
 package bagel;
 
+import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWErrorCallback;
+import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.*;
 import org.lwjgl.system.MemoryUtil;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
 import static org.lwjgl.glfw.GLFW.*;
@@ -25,7 +34,29 @@ public class Window {
     private static float gClear = 0.6f;
     private static float bClear = 0.9f;
 
-    private List<RenderInfo> renderQueue = new ArrayList<>();
+    private final RenderQueue renderQueue = new RenderQueue();
+    // In pipelined mode, the previous frame's jobs, being drawn while the next frame is updated into renderQueue
+    private final RenderQueue displayQueue = new RenderQueue();
+    private static RenderMode renderMode = RenderMode.BATCHED;
+    private final Map<RenderMode, Renderer> renderers = new EnumMap<>(RenderMode.class);
+    private static boolean reorderingEnabled = false;
+    private final QueueReorderer reorderer = new QueueReorderer();
+    private final QueueMerger merger = new QueueMerger(renderQueue);
+    private final Thread mainThread = Thread.currentThread();
+    // The thread that runs the game's update, whose drawing goes straight into renderQueue
+    private volatile Thread updateThread = mainThread;
+    // While a render target is capturing, the thread drawing into it and its queue
+    private volatile Thread captureThread = null;
+    private RenderQueue captureQueue = null;
+    private static boolean pipelined = false;
+    private static boolean headless = Boolean.getBoolean("bagel.headless");
+    private volatile boolean servicingTasks = false;
+    private final BagelStats stats;
+    // How long the most recent update took, for the frame's Flight Recorder event
+    private volatile long updateNanos = 0;
+    private final BlockingQueue<Runnable> mainThreadTasks = new LinkedBlockingQueue<>();
+    // Posted by the update thread once a frame's update has finished
+    private static final Runnable FRAME_DONE = () -> {};
 
     private static final List<Runnable> actionsOnLoad = new ArrayList<>();
     static void onLoad(Runnable r) {
@@ -81,6 +112,13 @@ public class Window {
         setClearColour((float) r, (float) g, (float) b);
     }
 
+    /**
+     * Make the window's clear colour the one used by glClear, after something else has changed it.
+     */
+    static void applyClearColour() {
+        glClearColor(rClear, gClear, bClear, 1.0f);
+    }
+
     /**
      * Removes the throttle on the game's FPS. Should be used to work around certain platforms that have driver bugs
      * resulting in poor performance.
@@ -89,6 +127,114 @@ public class Window {
         glfwSwapInterval(0);
     }
 
+    /**
+     * Choose how each frame's drawing is sent to the graphics card. The default is {@link RenderMode#BATCHED}.
+     */
+    public static void setRenderMode(RenderMode mode) {
+        renderMode = mode;
+    }
+
+    /**
+     * Allow each frame's drawing to be reordered so that images sharing a texture are drawn together, which saves
+     * texture switches. Images are only moved past images they do not overlap, so the result on screen is unchanged.
+     * Disabled by default.
+     *
+     * @see RenderStats#getBindsAfterReordering()
+     */
+    public static void setDrawReordering(boolean enabled) {
+        reorderingEnabled = enabled;
+    }
+
+    /**
+     * Run the game's update on a thread of its own, so that updating one frame overlaps with drawing the one before.
+     * Each frame is then shown one frame later than usual. Must be called before the game is run; disabled by default.
+     *
+     * While pipelined, update sees a snapshot of the input taken at the start of its frame. Images and fonts can still
+     * be created from update, but doing so waits until the main thread is free to load them.
+     */
+    public static void setPipelined(boolean enabled) {
+        pipelined = enabled;
+    }
+
+    /**
+     * Draw into an offscreen framebuffer instead of showing a window, for benchmarks and automated tests on machines
+     * without a display. Must be called before the game is created; also enabled by running Java with
+     * -Dbagel.headless=true. Disabled by default.
+     *
+     * The OpenGL context still comes from an invisible GLFW window. Where there is no window system at all, running
+     * Java with -Dbagel.context=egl or -Dbagel.context=osmesa asks GLFW for an EGL or Mesa OSMesa context instead.
+     *
+     * @see AbstractGame#runFrames(int)
+     * @see #readPixels()
+     */
+    public static void setHeadless(boolean enabled) {
+        headless = enabled;
+    }
+
+    /**
+     * Returns whether the game draws offscreen instead of into a visible window.
+     *
+     * @see #setHeadless(boolean)
+     */
+    public static boolean isHeadless() {
+        return headless;
+    }
+
+    /**
+     * Read back the last frame drawn, as RGBA bytes, one row at a time from the top-left corner. Intended for
+     * headless mode, where the frame is exactly the size of the window; with a visible window the result depends on
+     * the platform.
+     */
+    public static ByteBuffer readPixels() {
+        Window window = get();
+        return callOnMainThread(() -> {
+            int rowBytes = window.width * 4;
+            ByteBuffer pixels = BufferUtils.createByteBuffer(rowBytes * window.height);
+            glReadPixels(0, 0, window.width, window.height, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+
+            // OpenGL gives the bottom row first
+            byte[] top = new byte[rowBytes];
+            byte[] bottom = new byte[rowBytes];
+            for (int row = 0; row < window.height / 2; ++row) {
+                int topOffset = row * rowBytes;
+                int bottomOffset = (window.height - 1 - row) * rowBytes;
+                pixels.position(topOffset);
+                pixels.get(top);
+                pixels.position(bottomOffset);
+                pixels.get(bottom);
+                pixels.position(topOffset);
+                pixels.put(bottom);
+                pixels.position(bottomOffset);
+                pixels.put(top);
+            }
+            pixels.clear();
+            return pixels;
+        });
+    }
+
+    /**
+     * Returns whether the game's update runs on a thread of its own.
+     *
+     * @see #setPipelined(boolean)
+     */
+    public static boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Set the layer that the calling thread's drawing goes on from now on. At the end of each frame, everything drawn is
+     * put in layer order, lowest first, so higher layers are drawn on top; within a layer, jobs keep the order they
+     * were drawn in. Every thread starts on layer 0.
+     *
+     * Images can be drawn from any thread during {@link AbstractGame#update(Input)}, as long as that drawing has
+     * finished by the time update returns. Jobs from the main thread come before other threads' jobs on the same
+     * layer, but the order between other threads on one layer is not fixed, so give each thread its own layer if the
+     * order matters.
+     */
+    public static void setDrawLayer(int layer) {
+        get().getRenderQueue().setLayer(layer);
+    }
+
     /**
      * Close this window.
      */
@@ -106,6 +252,7 @@ public class Window {
         close();
         currentWindow = Optional.of(this);
 
+        glfwWindowHint(GLFW_CONTEXT_CREATION_API, headless ? contextApi() : GLFW_NATIVE_CONTEXT_API);
         hWindow = GLFW.glfwCreateWindow(width, height, title, MemoryUtil.NULL, MemoryUtil.NULL);
         if (hWindow == MemoryUtil.NULL) {
             throw new BagelError("Failed to create GLFW window");
@@ -118,13 +265,88 @@ public class Window {
         glEnable(GL_BLEND);
         glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
 
-        show();
+        if (headless) {
+            createOffscreenFramebuffer();
+        }
+
+        // Drawing needs these, and may happen on threads that can't create them
+        DefaultShader.get();
+        Texture.singlePixel();
+
+        if (!headless) {
+            show();
+        }
+
+        GLFWVidMode videoMode = glfwGetVideoMode(glfwGetPrimaryMonitor());
+        stats = new BagelStats(videoMode == null ? 0 : videoMode.refreshRate());
+        registerStats(stats);
 
         for (Runnable r : actionsOnLoad) {
             r.run();
         }
     }
 
+    private static int contextApi() {
+        String api = System.getProperty("bagel.context", "native");
+        switch (api.toLowerCase()) {
+            case "native":
+                return GLFW_NATIVE_CONTEXT_API;
+            case "egl":
+                return GLFW_EGL_CONTEXT_API;
+            case "osmesa":
+                return GLFW_OSMESA_CONTEXT_API;
+            default:
+                throw new BagelError("Unknown context API `" + api + "`: expected native, egl or osmesa");
+        }
+    }
+
+    /**
+     * Create a framebuffer the size of the window and leave it bound, so that everything is drawn into it.
+     */
+    private void createOffscreenFramebuffer() {
+        int colour = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, colour);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL30.GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        int framebuffer = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+        GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, colour, 0);
+        if (GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER) != GL30.GL_FRAMEBUFFER_COMPLETE) {
+            throw new BagelError("Failed to create offscreen framebuffer for headless mode");
+        }
+        glViewport(0, 0, width, height);
+    }
+
+    /**
+     * Publish the statistics for JMX monitoring, replacing any from an earlier window.
+     */
+    private static void registerStats(BagelStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(BagelStatsMXBean.OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+        } catch (JMException e) {
+            // Monitoring is optional; the game can run without it
+            System.out.println("[Bagel] warning: could not register statistics MBean: " + e.getMessage());
+        }
+    }
+
+    private static void unregisterStats() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(BagelStatsMXBean.OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            System.out.println("[Bagel] warning: could not unregister statistics MBean: " + e.getMessage());
+        }
+    }
+
     /**
      * Set input handlers for this window.
      */
@@ -143,38 +365,221 @@ public class Window {
     }
 
     /**
-     * Submit a rendering job to the queue with a specified texture and details.
+     * Returns the queue that the calling thread's rendering jobs for the current frame should be added to.
      */
-    void submitRenderJob(RenderInfo info) {
-        renderQueue.add(info);
+    RenderQueue getRenderQueue() {
+        Thread current = Thread.currentThread();
+        if (current == captureThread) {
+            return captureQueue;
+        }
+        return current == updateThread ? renderQueue : merger.queueForCurrentThread();
     }
 
     /**
-     * Runs the main loop for the window.
+     * Send the calling thread's drawing to the given queue instead of the frame's, until {@link #endCapture()}.
      */
-    void loop(Runnable action) {
-        glClearColor(rClear, gClear, bClear, 1.0f);
+    void beginCapture(RenderQueue queue) {
+        if (captureThread != null) {
+            throw new BagelError("Already drawing into a render target");
+        }
+        captureThread = Thread.currentThread();
+        captureQueue = queue;
+    }
 
-        long time = System.nanoTime();
-        while (!glfwWindowShouldClose(hWindow)) {
-            glfwPollEvents();
-            glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-            action.run();
+    void endCapture() {
+        captureThread = null;
+        captureQueue = null;
+    }
+
+    /**
+     * Draw a queue's jobs into whatever framebuffer is bound, with the current render mode, without ending the frame.
+     */
+    void renderJobs(RenderQueue queue) {
+        renderers.computeIfAbsent(renderMode, RenderMode::createRenderer).render(queue);
+    }
 
-            renderQueue.forEach(RenderInfo::render);
-            renderQueue.clear();
+    /**
+     * Run a task that uses OpenGL, which only the main thread can do. From any other thread, the task is handed to the
+     * main thread and this waits for it to finish; that is only possible while the main thread is waiting for a
+     * pipelined update.
+     */
+    static void runOnMainThread(Runnable task) {
+        callOnMainThread(() -> {
+            task.run();
+            return null;
+        });
+    }
 
+    /**
+     * Like {@link #runOnMainThread(Runnable)}, but returns the task's result.
+     */
+    static <T> T callOnMainThread(Supplier<T> task) {
+        Window window = currentWindow.orElse(null);
+        if (window == null || Thread.currentThread() == window.mainThread) {
+            return task.get();
+        }
+        if (!window.servicingTasks) {
+            throw new BagelError("Images and fonts can only be loaded from the main thread, or from a pipelined update");
+        }
+        FutureTask<T> future = new FutureTask<>(task::get);
+        window.mainThreadTasks.add(future);
+        return waitFor(future);
+    }
+
+    private static <T> T waitFor(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new BagelError("Exception on another thread: " + cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BagelError("Interrupted while waiting for another thread");
+        }
+    }
+
+    /**
+     * Draw a frame's jobs and empty the queue.
+     */
+    private long render(RenderQueue queue) {
+        long start = System.nanoTime();
+        // Every animated mesh drawn this frame shows the same moment
+        MeshGeometry.sampleClock();
+        Profiler.beginGpuTiming();
+        glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
+        RenderStats.countJobs(queue.size());
+        // Without reordering, the binds are counted as they happen rather than in a pass of their own
+        if (reorderingEnabled) {
+            int binds = QueueReorderer.countBinds(queue);
+            reorderer.reorder(queue);
+            RenderStats.countBinds(binds, QueueReorderer.countBinds(queue));
+        }
+        renderJobs(queue);
+        Profiler.endGpuTiming();
+        queue.clear();
+        RenderStats.endFrame();
+        long elapsed = System.nanoTime() - start;
+        Profiler.record(Profiler.Timing.SUBMIT, elapsed);
+        return elapsed;
+    }
+
+    private long swapBuffers() {
+        long start = System.nanoTime();
+        if (!headless) {
             glfwSwapBuffers(hWindow);
+        }
+        long elapsed = System.nanoTime() - start;
+        Profiler.record(Profiler.Timing.SWAP, elapsed);
+        return elapsed;
+    }
+
+    private Thread createUpdateThread(Runnable r) {
+        Thread thread = new Thread(r, "Bagel update");
+        thread.setDaemon(true);
+        updateThread = thread;
+        return thread;
+    }
+
+    /**
+     * Runs the main loop for the window. Each frame, `prepare` runs on the main thread after events are processed, then
+     * `action` updates the game, on the update thread if the window is pipelined.
+     *
+     * Stops after the given number of frames, or when the window closes if that is negative. The window is only
+     * cleaned up once it has closed, so the loop can be continued by calling this again.
+     */
+    void loop(Runnable prepare, Runnable action, long frames) {
+        applyClearColour();
+
+        ExecutorService updater = pipelined ? Executors.newSingleThreadExecutor(this::createUpdateThread) : null;
+        Runnable update = () -> {
+            try {
+                long start = System.nanoTime();
+                action.run();
+                updateNanos = System.nanoTime() - start;
+                Profiler.record(Profiler.Timing.UPDATE, updateNanos);
+                Profiler.drawOverlay();
+                merger.merge();
+            } finally {
+                if (updater != null) {
+                    mainThreadTasks.add(FRAME_DONE);
+                }
+            }
+        };
+
+        for (long done = 0; !glfwWindowShouldClose(hWindow) && (frames < 0 || done < frames); ++done) {
+            long frameStart = System.nanoTime();
+            FrameEvent event = new FrameEvent();
+            event.begin();
+            glfwPollEvents();
+            prepare.run();
+            AsyncTextureLoader.uploadDecoded();
+
+            long renderNanos;
+            long swapNanos;
+            if (updater == null) {
+                update.run();
+                renderNanos = render(renderQueue);
+                swapNanos = swapBuffers();
+            } else {
+                // Update the next frame while this thread draws the last one
+                servicingTasks = true;
+                Future<?> frame = updater.submit(update);
+                renderNanos = render(displayQueue);
+                swapNanos = swapBuffers();
+
+                // Load anything the update needs until it's done
+                try {
+                    for (Runnable task = mainThreadTasks.take(); task != FRAME_DONE; task = mainThreadTasks.take()) {
+                        task.run();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new BagelError("Interrupted while waiting for update");
+                }
+                servicingTasks = false;
+                waitFor(frame);
+                displayQueue.swap(renderQueue);
+            }
+            // Only now is no update running; a pipelined frame has been updated but not yet drawn
+            TextureManager.endFrame(updater == null);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.update = updateNanos;
+                event.render = renderNanos;
+                event.swap = swapNanos;
+                event.jobs = RenderStats.getJobs();
+                event.commit();
+            }
+            stats.recordFrame(System.nanoTime() - frameStart);
+        }
 
-//            long now = System.nanoTime();
-//            System.out.format("update: %.2f\n", 1000.0 / (((double) (now - time)) / 1e6));
-//            time = System.nanoTime();
+        if (updater != null) {
+            updater.shutdown();
+        }
+        if (!glfwWindowShouldClose(hWindow)) {
+            return;
         }
 
         // Clean up
+        unregisterStats();
+        // Graphics memory can only be released while the context still exists
+        for (Renderer renderer : renderers.values()) {
+            renderer.free();
+        }
+        renderers.clear();
+        TextureManager.destroy();
+        renderQueue.free();
+        displayQueue.free();
+        reorderer.free();
+        merger.free();
         glfwFreeCallbacks(hWindow);
         glfwDestroyWindow(hWindow);
-        TextureManager.destroy();
 
         glfwTerminate();
         Optional.ofNullable(glfwSetErrorCallback(null))
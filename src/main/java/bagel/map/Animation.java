@@ -2,7 +2,6 @@ package bagel.map;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
 
 class Animation {
     static class Frame {
@@ -16,19 +15,11 @@ class Animation {
         }
     }
     private final List<Frame> frames = new ArrayList<>();
-    private long lastTime = System.nanoTime();
-    private int currentFrame = 0;
     public void addFrame(Frame frame){
         frames.add(frame);
     }
 
-    public Frame getCurrentFrame(){
-        long timeDifferenceNS = System.nanoTime() - lastTime;
-        long timeDifferenceMS = TimeUnit.MILLISECONDS.convert(timeDifferenceNS, TimeUnit.NANOSECONDS);
-        if (timeDifferenceMS > frames.get(currentFrame).duration){
-            currentFrame = (currentFrame + 1) % frames.size();
-            lastTime = System.nanoTime();
-        }
-        return frames.get(currentFrame);
+    List<Frame> getFrames() {
+        return frames;
     }
 }
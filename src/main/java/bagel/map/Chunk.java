@@ -0,0 +1,22 @@
+package bagel.map;
+
+import bagel.TileMesh;
+
+/**
+ * A square block of one layer's tiles, baked into a mesh that is drawn with one draw call. Animated tiles are part of
+ * the mesh, and are animated on the graphics card.
+ */
+class Chunk {
+    /**
+     * The width and height of a chunk, in tiles.
+     */
+    static final int SIZE = 32;
+
+    final TileMesh mesh;
+    // Whether a tile has changed since the mesh was built, so it must be rebuilt before the chunk is next drawn
+    boolean dirty = true;
+
+    Chunk(TileMesh mesh) {
+        this.mesh = mesh;
+    }
+}
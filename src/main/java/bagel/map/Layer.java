@@ -8,7 +8,6 @@ import java.util.zip.GZIPInputStream;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
-import java.util.Optional;
 
 class Layer {
 
@@ -70,14 +69,19 @@ class Layer {
         this.height = height;
     }
 
-    Optional<Tile> at(int tx, int ty) {
+    // Returns null rather than an Optional, since this is called for every tile drawn
+    Tile at(int tx, int ty) {
         if (tx < 0 || tx >= tiles.length || ty < 0 || ty >= tiles[0].length) {
-            return Optional.empty();
+            return null;
         } else {
-            return Optional.ofNullable(tiles[tx][ty]);
+            return tiles[tx][ty];
         }
     }
 
+    void set(int tx, int ty, Tile tile) {
+        tiles[tx][ty] = tile;
+    }
+
     private final static int FLIPPED_HORIZONTALLY_FLAG = 0x80000000;
     private final static int FLIPPED_VERTICALLY_FLAG = 0x40000000;
     private final static int FLIPPED_DIAGONALLY_FLAG = 0x20000000;
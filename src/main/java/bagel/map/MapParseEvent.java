@@ -0,0 +1,22 @@
+package bagel.map;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event covering a Tiled map or tile set file being parsed.
+ */
+@Name("bagel.MapParse")
+@Label("Map Parse")
+@Category({"Bagel", "Assets"})
+@Description("A .tmx or .tsx file parsed")
+class MapParseEvent extends jdk.jfr.Event {
+    @Label("File")
+    String file;
+
+    @Label("Format")
+    @Description("tmx for maps, tsx for tile sets")
+    String format;
+}
@@ -0,0 +1,8 @@
+package bagel.map;
+
+enum Orientation {
+    NORMAL,
+    FLIPPED_HORIZONTAL,
+    FLIPPED_VERTICAL,
+    FLIPPED_DIAGONAL
+}
@@ -1,12 +1,5 @@
 package bagel.map;
 
-enum Orientation {
-    NORMAL,
-    FLIPPED_HORIZONTAL,
-    FLIPPED_VERTICAL,
-    FLIPPED_DIAGONAL
-}
-
 class Tile {
     final int x;
     final int y;
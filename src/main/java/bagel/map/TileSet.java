@@ -14,7 +14,9 @@ class TileSet {
 
     final int tileWidth;
     final int tileHeight;
-    final Image image;
+    // Only loaded when first asked for, since a map drawn from a tile array never needs it
+    private Image image = null;
+    final String imageFile;
     final int offset;
     private Map<String, Map<Integer, String>> properties = new HashMap<>();
     private Map<Integer, TileInformation> tileInformation;
@@ -170,10 +172,29 @@ class TileSet {
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
         this.offset = offset;
-        this.image = new Image(imageFile);
+        this.imageFile = imageFile;
         this.tileInformation = tileInformation;
     }
 
+    /**
+     * Returns the tileset's whole image, loading it if it isn't already.
+     */
+    Image getImage() {
+        if (image == null) {
+            image = new Image(imageFile);
+        }
+        return image;
+    }
+
+    /**
+     * Release the tileset's image, if it was ever loaded.
+     */
+    void dispose() {
+        if (image != null) {
+            image.dispose();
+        }
+    }
+
     public Map<Integer, TileInformation> getTileInformation() {
         return tileInformation;
     }
@@ -1,7 +1,8 @@
 package bagel.map;
 
 import bagel.BagelError;
-import bagel.DrawOptions;
+import bagel.TileArray;
+import bagel.TileMesh;
 import bagel.util.Point;
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
@@ -21,7 +22,9 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -35,13 +38,31 @@ public class TiledMap {
     private final ArrayList<Layer> layers = new ArrayList<>();
     private final ArrayList<ObjectGroup> objectGroups = new ArrayList<>();
     private final TileSet tileSet;
+    // The tileset's tiles as layers of an array texture, or null if the chunks draw from its image
+    private final TileArray tileArray;
+    // For each layer, its chunks in rows of chunksAcross(layer.width)
+    private final ArrayList<Chunk[]> chunks = new ArrayList<>();
+    private boolean destroyed = false;
 
     /**
      * Build the tiled map from the provided .tmx file.
      */
     public TiledMap(String tmxFile) {
+        this(tmxFile, false);
+    }
+
+    /**
+     * Build the tiled map from the provided .tmx file. If useTextureArray is true, the tileset is uploaded to the
+     * graphics card with each tile in its own layer of an array texture, so neighbouring tiles can't bleed into each
+     * other when the map is drawn at fractional positions.
+     */
+    public TiledMap(String tmxFile, boolean useTextureArray) {
         String tsxFilename = parseTmx(tmxFile.replace("\\", "/"));
         tileSet = parseTsx(tsxFilename);
+        tileArray = useTextureArray
+            ? new TileArray(tileSet.imageFile, tileSet.tileWidth, tileSet.tileHeight)
+            : null;
+        buildChunks();
     }
 
     /**
@@ -158,6 +179,67 @@ public class TiledMap {
         }
     }
 
+    /**
+     * Returns the number of tile layers in the map.
+     */
+    public int getLayerCount() {
+        return layers.size();
+    }
+
+    /**
+     * Returns the ID of the tile at the given (x, y) pixel coordinate of the given layer, as shown
+     * in the tileset in Tiled, or -1 if there is no tile there.
+     */
+    public int getTileId(int x, int y, int layer) {
+        Tile tile = tileAt(x, y, layer);
+        return tile.id < tileSet.offset ? -1 : tile.id - tileSet.offset;
+    }
+
+    /**
+     * Replace the tile at the given (x, y) pixel coordinate of the given layer with a tile from the
+     * tileset, identified by its ID as shown in Tiled. Layers are numbered from 0, bottom first.
+     * <p>
+     * Only the part of the map around the tile is rebuilt, the next time it is drawn, so changing
+     * a few tiles every frame is cheap even on a large map. Properties are looked up from the new
+     * tile straight away.
+     */
+    public void setTile(int x, int y, int layer, int tileId) {
+        if (tileId < 0 || tileId >= tileCount()) {
+            throw new BagelError("Tile ID " + tileId + " is not in the tileset");
+        }
+        replaceTile(x, y, layer, tileId + tileSet.offset);
+    }
+
+    /**
+     * Remove the tile at the given (x, y) pixel coordinate of the given layer, leaving the cell
+     * empty.
+     *
+     * @see #setTile(int, int, int, int)
+     */
+    public void clearTile(int x, int y, int layer) {
+        // Tile ID 0 means the cell is empty
+        replaceTile(x, y, layer, 0);
+    }
+
+    private void replaceTile(int x, int y, int layerIndex, int id) {
+        Tile old = tileAt(x, y, layerIndex);
+        Layer layer = layers.get(layerIndex);
+        layer.set(old.x, old.y, new Tile(old.x, old.y, id, Orientation.NORMAL, layer));
+        chunks.get(layerIndex)[old.x / Chunk.SIZE + old.y / Chunk.SIZE * chunksAcross(layer.width)]
+            .dirty = true;
+    }
+
+    private Tile tileAt(int x, int y, int layer) {
+        if (layer < 0 || layer >= layers.size()) {
+            throw new BagelError("Layer " + layer + " not in map");
+        }
+        Tile tile = x < 0 || y < 0 ? null : at(x, y, layer);
+        if (tile == null) {
+            throw new BagelError("Position (" + x + ", " + y + ") not on map");
+        }
+        return tile;
+    }
+
     /**
      * Returns true if the tile at the given (x, y) pixel coordinate of the map has the given
      * property.
@@ -166,11 +248,14 @@ public class TiledMap {
         return getProperty(x, y, property) != null;
     }
 
-    private Point tileIdToPoint(int id) {
-        int tw = (int) (tileSet.image.getWidth() / getTileWidth());
-        int tx = id % tw;
-        int ty = id / tw;
-        return new Point(tx, ty);
+    private int tilesPerRow() {
+        return tileArray != null ? tileArray.getColumns() : (int) (tileSet.getImage().getWidth() / getTileWidth());
+    }
+
+    private int tileCount() {
+        return tileArray != null
+            ? tileArray.getTileCount()
+            : tilesPerRow() * (int) (tileSet.getImage().getHeight() / getTileHeight());
     }
 
     /**
@@ -189,6 +274,10 @@ public class TiledMap {
     /**
      * Draws the rectangular region of the map with top left at (mapX, mapY) and bottom right at
      * (mapX + width, mapY + height). The top left will be drawn on the window at (windowX, windowY).
+     * <p>
+     * Each layer is stored as chunks of 32x32 tiles that are kept on the graphics card, so only the
+     * chunks overlapping the region are drawn, with one draw call each. Animated tiles are part of the
+     * chunks too, and are animated on the graphics card.
      *
      * @param windowX The x coordinate of the window to start drawing the map region from
      * @param windowY The y coordinate of the window to start drawing the map region from
@@ -199,58 +288,157 @@ public class TiledMap {
      */
     public void draw(double windowX, double windowY, double mapX, double mapY, double width,
         double height) {
-        int xOffset = -((int) mapX) % getTileWidth();
-        int yOffset = -((int) mapY) % getTileHeight();
-
-        for (int x = (int) mapX; x < Math.min(mapX + width, getWidth()) + getTileWidth();
-            x += getTileWidth()) {
-            for (int y = (int) mapY; y < Math.min(mapY + height, getHeight()) + getTileHeight();
-                y += getTileHeight()) {
-                Tile tile = null;
-                for (int i = 0; i < layers.size(); i++) {
-                    tile = at(x, y, i);
-                    if (tile != null) {
-                        int id = tile.id - tileSet.offset;
-                        Point tileLocation = tileIdToPoint(id);
-                        DrawOptions opt = new DrawOptions();
-                        switch (tile.orientation) {
-                            case FLIPPED_HORIZONTAL:
-                                opt.setScale(-1, 1);
-                                break;
-                            case FLIPPED_VERTICAL:
-                                opt.setScale(1, -1);
-                                break;
-                            case FLIPPED_DIAGONAL:
-                                opt.setScale(-1, -1);
-                                break;
-                        }
-                        // Check if tile is animated
-                        if (tileSet.getTileInformation().containsKey(id)) {
-                            TileInformation tileInformation = tileSet.getTileInformation().get(id);
-                            if (tileInformation.animation == null) {
-                                continue;
-                            }
-                            int newId = tileInformation.animation.getCurrentFrame().id;
-                            tileLocation = tileIdToPoint(newId);
-                        }
-                        opt.setSection(tileLocation.x * getTileWidth(),
-                            tileLocation.y * getTileHeight(), getTileWidth(),
-                            getTileHeight());
-                        tileSet.image.drawFromTopLeft(windowX + x - mapX + xOffset,
-                            windowY + y - mapY + yOffset,
-                            opt);
+        if (destroyed) {
+            throw new BagelError("Cannot draw a map after it has been destroyed");
+        }
+        int tileWidth = getTileWidth();
+        int tileHeight = getTileHeight();
+        // Every tile touching the region is drawn, along with the next tile past its right and bottom edges
+        int startX = (int) mapX;
+        int startY = (int) mapY;
+        int firstColumn = Math.floorDiv(startX, tileWidth);
+        int firstRow = Math.floorDiv(startY, tileHeight);
+        int endColumn = firstColumn + (int) Math.ceil(
+            (Math.min(mapX + width, getWidth()) + tileWidth - startX) / tileWidth);
+        int endRow = firstRow + (int) Math.ceil(
+            (Math.min(mapY + height, getHeight()) + tileHeight - startY) / tileHeight);
+        firstColumn = Math.max(firstColumn, 0);
+        firstRow = Math.max(firstRow, 0);
+
+        // Where the map's top-left corner ends up on the window
+        double originX = windowX - mapX;
+        double originY = windowY - mapY;
+
+        for (int i = 0; i < layers.size(); i++) {
+            Layer layer = layers.get(i);
+            Chunk[] layerChunks = chunks.get(i);
+            int chunksPerRow = chunksAcross(layer.width);
+            int layerEndColumn = Math.min(endColumn, layer.width);
+            int layerEndRow = Math.min(endRow, layer.height);
+            if (firstColumn >= layerEndColumn || firstRow >= layerEndRow) {
+                continue;
+            }
+            // Clip the chunks to the tiles that would have been drawn individually
+            double clipLeft = firstColumn * tileWidth;
+            double clipTop = firstRow * tileHeight;
+            double clipRight = layerEndColumn * tileWidth;
+            double clipBottom = layerEndRow * tileHeight;
+
+            for (int chunkY = firstRow / Chunk.SIZE; chunkY <= (layerEndRow - 1) / Chunk.SIZE; ++chunkY) {
+                for (int chunkX = firstColumn / Chunk.SIZE; chunkX <= (layerEndColumn - 1) / Chunk.SIZE; ++chunkX) {
+                    Chunk chunk = layerChunks[chunkX + chunkY * chunksPerRow];
+                    if (chunk.dirty) {
+                        fillChunk(chunk, layer, chunkX, chunkY);
+                    }
+                    chunk.mesh.draw(originX, originY, clipLeft, clipTop, clipRight, clipBottom);
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the graphics memory held by the map's chunks, and the map's hold on its tileset image or tile array,
+     * which can then be freed like a disposed {@link bagel.Image}. The map can't be drawn afterwards, but its tiles and properties can
+     * still be looked up. Destroying a map more than once has no further effect.
+     */
+    public void destroy() {
+        if (!destroyed) {
+            destroyed = true;
+            for (Chunk[] layerChunks : chunks) {
+                for (Chunk chunk : layerChunks) {
+                    chunk.mesh.destroy();
+                }
+            }
+            tileSet.dispose();
+            if (tileArray != null) {
+                tileArray.dispose();
+            }
+        }
+    }
+
+    private static int chunksAcross(int tiles) {
+        return (tiles + Chunk.SIZE - 1) / Chunk.SIZE;
+    }
+
+    /**
+     * Create the chunks for each layer. They are filled in when first drawn.
+     */
+    private void buildChunks() {
+        for (Layer layer : layers) {
+            Chunk[] layerChunks = new Chunk[chunksAcross(layer.width) * chunksAcross(layer.height)];
+            for (int i = 0; i < layerChunks.length; ++i) {
+                TileMesh mesh = tileArray != null ? new TileMesh(tileArray) : new TileMesh(tileSet.getImage());
+                layerChunks[i] = new Chunk(mesh);
+            }
+            chunks.add(layerChunks);
+        }
+    }
+
+    /**
+     * Bake the chunk's tiles into its mesh, adding each animation the chunk uses to the mesh once.
+     */
+    private void fillChunk(Chunk chunk, Layer layer, int chunkX, int chunkY) {
+        chunk.mesh.clear();
+        Map<Animation, Integer> meshAnimations = new HashMap<>();
+        int tilesPerRow = tilesPerRow();
+        int tileWidth = getTileWidth();
+        int tileHeight = getTileHeight();
+        int endY = Math.min((chunkY + 1) * Chunk.SIZE, layer.height);
+        int endX = Math.min((chunkX + 1) * Chunk.SIZE, layer.width);
+        for (int y = chunkY * Chunk.SIZE; y < endY; ++y) {
+            for (int x = chunkX * Chunk.SIZE; x < endX; ++x) {
+                Tile tile = layer.at(x, y);
+                // Tile ID 0 means the cell is empty
+                if (tile == null || tile.id < tileSet.offset) {
+                    continue;
+                }
+                int id = tile.id - tileSet.offset;
+                TileInformation tileInformation = tileSet.getTileInformation().get(id);
+                boolean flipHorizontal = tile.orientation == Orientation.FLIPPED_HORIZONTAL
+                    || tile.orientation == Orientation.FLIPPED_DIAGONAL;
+                boolean flipVertical = tile.orientation == Orientation.FLIPPED_VERTICAL
+                    || tile.orientation == Orientation.FLIPPED_DIAGONAL;
+                if (tileInformation != null) {
+                    Animation animation = tileInformation.animation;
+                    if (animation != null) {
+                        int meshAnimation = meshAnimations.computeIfAbsent(animation,
+                            a -> addAnimation(chunk.mesh, a));
+                        chunk.mesh.addAnimatedTile(x * tileWidth, y * tileHeight, tileWidth, tileHeight,
+                            meshAnimation, flipHorizontal, flipVertical);
                     }
+                    continue;
                 }
+                chunk.mesh.addTile(x * tileWidth, y * tileHeight,
+                    id % tilesPerRow * tileWidth, id / tilesPerRow * tileHeight, tileWidth, tileHeight,
+                    flipHorizontal, flipVertical);
             }
         }
+        chunk.dirty = false;
+    }
+
+    private int addAnimation(TileMesh mesh, Animation animation) {
+        List<Animation.Frame> frames = animation.getFrames();
+        int tilesPerRow = tilesPerRow();
+        double[] sectionXs = new double[frames.size()];
+        double[] sectionYs = new double[frames.size()];
+        int[] durations = new int[frames.size()];
+        for (int i = 0; i < frames.size(); ++i) {
+            Animation.Frame frame = frames.get(i);
+            sectionXs[i] = frame.id % tilesPerRow * getTileWidth();
+            sectionYs[i] = frame.id / tilesPerRow * getTileHeight();
+            durations[i] = frame.duration;
+        }
+        return mesh.addAnimation(sectionXs, sectionYs, durations);
     }
 
     Tile at(int x, int y, int layer) {
-        return layers.get(layer).at(x / tileSet.tileWidth, y / tileSet.tileHeight).orElse(null);
+        return layers.get(layer).at(x / tileSet.tileWidth, y / tileSet.tileHeight);
     }
 
     // Returns TSX file location
     private String parseTmx(String filename) {
+        MapParseEvent event = new MapParseEvent();
+        event.begin();
         try {
             // First, we want to parse the TMX as XML.
             String xml = new String(Files.readAllBytes(Paths.get(filename)));
@@ -348,6 +536,9 @@ public class TiledMap {
                 }
             }
 
+            event.file = filename;
+            event.format = "tmx";
+            event.commit();
             return filename.substring(0, filename.lastIndexOf("/")) + "/" + tsxLocation
                 .getTextContent();
         } catch (IOException | ParserConfigurationException | SAXException e) {
@@ -357,6 +548,8 @@ public class TiledMap {
     }
 
     private TileSet parseTsx(String filename) {
+        MapParseEvent event = new MapParseEvent();
+        event.begin();
         try {
             String xml = new String(Files.readAllBytes(Paths.get(filename)));
 
@@ -425,6 +618,9 @@ public class TiledMap {
                     }
                 }
             }
+            event.file = filename;
+            event.format = "tsx";
+            event.commit();
             return ts;
         } catch (SAXException | ParserConfigurationException | IOException e) {
             throw new BagelError("Exception while loading TSX file `" + filename + "`: "
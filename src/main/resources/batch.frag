@@ -0,0 +1,11 @@
+#version 330
+in vec2 TexCoord;
+flat in vec4 blend;
+
+uniform sampler2D ourTexture;
+
+out vec4 frag_colour;
+
+void main(void) {
+    frag_colour = texture(ourTexture, TexCoord) * blend;
+}
@@ -0,0 +1,17 @@
+#version 330
+layout (location = 0) in vec2 position;
+layout (location = 1) in vec2 inTexCoord;
+layout (location = 2) in vec4 inBlend;
+
+uniform float width;
+uniform float height;
+
+out vec2 TexCoord;
+flat out vec4 blend;
+
+void main(void) {
+    // The vertices have already been scaled, rotated and translated, so only the projection is left
+    gl_Position = vec4(2.0 * position.x / width - 1.0, 1.0 - 2.0 * position.y / height, 0.0, 1.0);
+    TexCoord = inTexCoord;
+    blend = inBlend;
+}
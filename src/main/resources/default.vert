@@ -7,6 +7,10 @@ uniform float height;
 uniform vec3 translation;
 uniform vec3 scale;
 uniform float rotation;
+uniform float xOffset;
+uniform float yOffset;
+uniform float xMax;
+uniform float yMax;
 
 out vec2 TexCoord;
 out vec4 coord;
@@ -31,8 +35,12 @@ void main(void) {
                     0.0,            0.0,           1.0, 0.0,
                     0.0,            0.0,           0.0, 1.0);
 
+    // Shrink the quad so that it only covers the section being drawn
+    vec2 texCoord = mix(vec2(xOffset, yOffset), vec2(xMax, yMax), inTexCoord);
+    vec4 position = vec4(texCoord - 0.5, vp.z, 1.0);
+
      // GL matrices are column major for some reason, so transpose
-    gl_Position = transpose(ortho)  * transpose(translate) * transpose(rot) * scale * vec4(vp, 1.0);
-    TexCoord = inTexCoord;
+    gl_Position = transpose(ortho)  * transpose(translate) * transpose(rot) * scale * position;
+    TexCoord = texCoord;
     coord = gl_Position;
 }
\ No newline at end of file
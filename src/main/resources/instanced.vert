@@ -0,0 +1,27 @@
+#version 330
+layout (location = 0) in vec3 vp;
+layout (location = 1) in vec2 inTexCoord;
+layout (location = 2) in vec2 translation;
+layout (location = 3) in vec2 scale;
+layout (location = 4) in float rotation;
+layout (location = 5) in vec4 inBlend;
+layout (location = 6) in vec4 inSection;
+
+uniform float width;
+uniform float height;
+
+out vec2 TexCoord;
+flat out vec4 blend;
+
+void main(void) {
+    // Same transformation as default.vert, with the uniforms replaced by per-instance attributes
+    vec2 texCoord = mix(inSection.xy, inSection.zw, inTexCoord);
+    vec2 scaled = (texCoord - 0.5) * scale;
+    float c = cos(rotation);
+    float s = sin(rotation);
+    vec2 position = translation + vec2(c * scaled.x - s * scaled.y, s * scaled.x + c * scaled.y);
+
+    gl_Position = vec4(2.0 * position.x / width - 1.0, 1.0 - 2.0 * position.y / height, 0.0, 1.0);
+    TexCoord = texCoord;
+    blend = inBlend;
+}
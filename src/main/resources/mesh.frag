@@ -0,0 +1,17 @@
+#version 330
+in vec3 TexCoord;
+in vec2 meshPosition;
+
+uniform sampler2D ourTexture;
+uniform vec4 blend;
+// The part of the mesh to draw, in the mesh's own coordinates: left, top, right, bottom
+uniform vec4 clip;
+
+out vec4 frag_colour;
+
+void main(void) {
+    if (meshPosition.x < clip.x || meshPosition.y < clip.y || meshPosition.x >= clip.z || meshPosition.y >= clip.w) {
+        discard;
+    }
+    frag_colour = texture(ourTexture, TexCoord.xy) * blend;
+}
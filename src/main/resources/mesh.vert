@@ -0,0 +1,50 @@
+#version 330
+layout (location = 0) in vec2 position;
+// The layer is only used when the tiles come from an array texture
+layout (location = 1) in vec3 inTexCoord;
+// Where the tile's animation is in the frame table, or -1 if it isn't animated
+layout (location = 2) in float animation;
+
+uniform float width;
+uniform float height;
+uniform vec2 translation;
+uniform vec2 scale;
+uniform float rotation;
+// Milliseconds on the animation clock shared by every mesh
+uniform uint time;
+// Each animation is a header (first frame, frame count, total duration) followed by its frames (end time within the
+// animation, then the offset of the frame's texture coordinates and layer from the first frame's)
+uniform samplerBuffer frames;
+
+out vec3 TexCoord;
+out vec2 meshPosition;
+
+void main(void) {
+    // Same transformation as instanced.vert, applied to vertices given in the mesh's own coordinates
+    vec2 scaled = position * scale;
+    float c = cos(rotation);
+    float s = sin(rotation);
+    vec2 moved = translation + vec2(c * scaled.x - s * scaled.y, s * scaled.x + c * scaled.y);
+
+    gl_Position = vec4(2.0 * moved.x / width - 1.0, 1.0 - 2.0 * moved.y / height, 0.0, 1.0);
+    meshPosition = position;
+
+    vec3 frameOffset = vec3(0.0);
+    if (animation >= 0.0) {
+        vec4 header = texelFetch(frames, int(animation));
+        uint duration = uint(header.z);
+        if (duration > 0u) {
+            float elapsed = float(time % duration);
+            int first = int(header.x);
+            int count = int(header.y);
+            for (int i = 0; i < count; ++i) {
+                vec4 frame = texelFetch(frames, first + i);
+                if (elapsed < frame.x) {
+                    frameOffset = frame.yzw;
+                    break;
+                }
+            }
+        }
+    }
+    TexCoord = inTexCoord + frameOffset;
+}